@@ -41,6 +41,10 @@ import fr.jmmc.smprun.preference.ApplicationListSelectionView;
 import fr.jmmc.smprun.preference.PreferenceKey;
 import fr.jmmc.smprun.preference.Preferences;
 import fr.jmmc.smprun.stub.ClientStub;
+import fr.jmmc.smprun.stub.LaunchScheduler;
+import fr.jmmc.smprun.stub.SpeculativeLauncher;
+import fr.jmmc.smprun.stub.StartupLagModel;
+import fr.jmmc.smprun.stub.WarmPool;
 import java.awt.event.ActionEvent;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -193,6 +197,12 @@ public class AppLauncher extends App {
 
         // Show Welcome pane and perform JNLP/SAMP auto-test on first AppLauncher launch
         performFirstRunTasks();
+
+        // Start warm standby instances (if any configured) in background
+        WarmPool.getInstance().start(HubPopulator.getDescriptorMap(), HubPopulator.getClientStubMap());
+
+        // Enable usage-driven speculative launches (if enabled)
+        SpeculativeLauncher.getInstance().start(HubPopulator.getDescriptorMap(), HubPopulator.getClientStubMap());
     }
 
     @Override
@@ -213,9 +223,18 @@ public class AppLauncher extends App {
         // Stop job runner first to prevent new job submission
         LocalLauncher.shutdown();
 
+        // Stop warming applications and predicting launches (usage model saved)
+        WarmPool.getInstance().stop();
+        SpeculativeLauncher.getInstance().stop();
+
         // Properly disconnect connected clients
         HubPopulator.disconnectAllStubs();
 
+        // Persist learned application startup lags
+        StartupLagModel.getInstance().saveToPreferences();
+
+        _logger.info("Launch statistics: {} {}", LaunchScheduler.getInstance(), SpeculativeLauncher.getInstance());
+
         _launchJnlpSampAutoTestAction = null;
         _launchJavaWebStartViewerAction = null;
         _dockWindow = null;
@@ -286,7 +305,9 @@ public class AppLauncher extends App {
     private boolean checkJnlpSampAbilities() {
 
         // First wait for stubs to canBeTerminatedNow startup
+        final long startWait = System.nanoTime();
         HubMonitor.getInstance().waitForStubsStartup();
+        _logger.info("Waited {} ms for stubs startup.", (System.nanoTime() - startWait) / 1000000L);
 
         boolean success = false;
 
@@ -318,11 +339,13 @@ public class AppLauncher extends App {
                 JnlpStarter.setJavaWebStartVerbose(true);
 
                 final String appLauncherTesterMType = SampCapability.APPLAUNCHERTESTER_TRY_LAUNCH.mType();
+                final long startTest = System.nanoTime();
                 SampManager.sendMessageTo(appLauncherTesterMType, appLauncherTesterClientId, null);
 
                 // Wait for tester stub to succeed (LAUNCH -> SEEK -> FORWARD -> DISCONNECT -> DYE)
                 testerStub.waitForSuccess(APPLAUNCHER_TESTER_TIMEOUT);
 
+                _logger.info("JNLP/SAMP auto-test succeeded in {} ms.", (System.nanoTime() - startTest) / 1000000L);
                 success = true;
 
             } catch (SampException se) {
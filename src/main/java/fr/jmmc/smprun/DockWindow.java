@@ -26,9 +26,11 @@ import fr.jmmc.jmcs.gui.util.ResourceImage;
 import fr.jmmc.jmcs.util.ImageUtils;
 import fr.jmmc.smprsc.data.list.StubRegistry;
 import fr.jmmc.smprsc.data.list.model.Category;
+import fr.jmmc.smprsc.data.stub.StubMetaData;
 import fr.jmmc.smprun.preference.ApplicationListSelectionView;
 import fr.jmmc.smprun.preference.Preferences;
 import fr.jmmc.smprun.stub.ClientStub;
+import fr.jmmc.smprun.stub.StubDescriptor;
 import java.awt.*;
 import java.awt.event.*;
 import java.util.HashMap;
@@ -59,10 +61,10 @@ public class DockWindow extends JFrame implements Observer {
     /** window dimensions */
     private static final Dimension _windowDimension = new Dimension(640, 120);
     /* members */
-    /** button / client map */
-    private final HashMap<JButton, ClientStub> _clientButtons = new HashMap<JButton, ClientStub>(8);
-    /** client / button map */
-    private final HashMap<ClientStub, JButton> _buttonClients = new HashMap<ClientStub, JButton>(8);
+    /** button / application name map */
+    private final HashMap<JButton, String> _clientButtons = new HashMap<JButton, String>(8);
+    /** application name / button map */
+    private final HashMap<String, JButton> _buttonClients = new HashMap<String, JButton>(8);
     /** User-chosen application name list */
     private final Preferences _preferences;
     /** Unique application button action listener */
@@ -101,9 +103,10 @@ public class DockWindow extends JFrame implements Observer {
                 if (e.getSource() instanceof JButton) {
                     final JButton button = (JButton) e.getSource();
 
-                    final ClientStub stub = _clientButtons.get(button);
+                    final String applicationName = _clientButtons.get(button);
 
-                    // Start application in background:
+                    // Start application in background (client stub created on first use):
+                    final ClientStub stub = (applicationName != null) ? HubPopulator.retrieveClientStub(applicationName) : null;
                     if (stub != null) {
                         stub.launchRealApplication();
                     }
@@ -230,23 +233,23 @@ public class DockWindow extends JFrame implements Observer {
                 continue; // Skip its creation
             }
 
-            // Retrieve corresponding stub (if any)
-            final ClientStub clientStub = HubPopulator.retrieveClientStub(visibleClientName);
-            if (clientStub == null) {
+            // Retrieve corresponding stub descriptor (if any)
+            final StubDescriptor descriptor = HubPopulator.getDescriptorMap().get(visibleClientName);
+            if (descriptor == null) {
                 _logger.error("Could not get '{}' stub.", visibleClientName);
                 continue;
             }
 
             // If the current stub should remain invisble
-            final JButton button = buildApplicationButton(clientStub);
+            final JButton button = buildApplicationButton(visibleClientName, descriptor);
             if (button == null) {
                 continue; // Skip GUI stuff creation
             }
             categoryIsEmpty = false;
             button.addActionListener(_buttonActionListener);
             horizontalRowPane.add(button);
-            _clientButtons.put(button, clientStub);
-            _buttonClients.put(clientStub, button);
+            _clientButtons.put(button, visibleClientName);
+            _buttonClients.put(visibleClientName, button);
 
 
             Component infoButton = buildInfoButtonForApplication(visibleClientName);
@@ -275,14 +278,14 @@ public class DockWindow extends JFrame implements Observer {
     }
 
     /**
-     * Create the button representing one client stub (application)
-     * @param client client stub instance
+     * Create the button representing one application
+     * @param clientName application name
+     * @param descriptor application stub descriptor
      * @return created button, or null if not visible.
      */
-    private JButton buildApplicationButton(final ClientStub client) {
+    private JButton buildApplicationButton(final String clientName, final StubDescriptor descriptor) {
 
-        final String clientName = client.getApplicationName();
-        ImageIcon clientIcon = client.getApplicationIcon();
+        ImageIcon clientIcon = StubMetaData.getEmbeddedApplicationIcon(clientName);
         if (clientIcon == null) {
             return null;
         }
@@ -314,7 +317,7 @@ public class DockWindow extends JFrame implements Observer {
         button.setHorizontalTextPosition(SwingConstants.CENTER);
         button.setBorder(border);
         //Add tooltip if any description available
-        final String tooltip = client.getDescription();
+        final String tooltip = descriptor.getDescription();
         if (tooltip != null) {
             button.setToolTipText(tooltip);
         }
@@ -328,7 +331,7 @@ public class DockWindow extends JFrame implements Observer {
      * @param enabled button state
      */
     public void setClientButtonEnabled(final ClientStub client, final boolean enabled) {
-        final JButton button = _buttonClients.get(client);
+        final JButton button = _buttonClients.get(client.getApplicationName());
         if (button != null) {
             SwingUtils.invokeEDT(new Runnable() {
                 @Override
@@ -0,0 +1,272 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun;
+
+import fr.jmmc.jmcs.network.interop.SampManager;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import org.astrogrid.samp.Client;
+import org.astrogrid.samp.Message;
+import org.astrogrid.samp.Metadata;
+import org.astrogrid.samp.Subscriptions;
+import org.astrogrid.samp.client.AbstractMessageHandler;
+import org.astrogrid.samp.client.HubConnection;
+import org.astrogrid.samp.client.HubConnector;
+import org.astrogrid.samp.client.SampException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracker of SAMP clients registered on the hub, using the AppLauncher hub connector (SampManager).
+ *
+ * It directly consumes the samp.hub.event.* notifications (register, unregister, metadata and subscriptions) into a
+ * concurrent map and reports every modified client identifier (including removed ones) to its listener, using the SAMP
+ * callback thread (no Swing list model nor EDT involved). The map is reloaded whenever the connector registers to or
+ * unregisters from a hub (hub restart).
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+public final class HubClientTracker {
+
+    /** Logger */
+    private static final Logger _logger = LoggerFactory.getLogger(HubClientTracker.class.getName());
+    /** hub event: client registered */
+    private static final String MTYPE_REGISTER = "samp.hub.event.register";
+    /** hub event: client unregistered */
+    private static final String MTYPE_UNREGISTER = "samp.hub.event.unregister";
+    /** hub event: client metadata declared */
+    private static final String MTYPE_METADATA = "samp.hub.event.metadata";
+    /** hub event: client subscriptions declared */
+    private static final String MTYPE_SUBSCRIPTIONS = "samp.hub.event.subscriptions";
+    /** hub event parameter: client identifier */
+    private static final String PARAM_ID = "id";
+    /** hub event parameter: client metadata */
+    private static final String PARAM_METADATA = "metadata";
+    /** hub event parameter: client subscriptions */
+    private static final String PARAM_SUBSCRIPTIONS = "subscriptions";
+
+    /**
+     * Listener notified whenever a client is registered, unregistered or modified
+     */
+    public interface Listener {
+
+        /**
+         * Called (from the SAMP callback thread) when the given client changed
+         *
+         * @param clientId identifier of the registered, modified or unregistered client
+         */
+        void clientChanged(String clientId);
+    }
+    /* members */
+    /** registered clients keyed by client identifier */
+    private final ConcurrentHashMap<String, HubClient> _clients = new ConcurrentHashMap<String, HubClient>(64);
+    /** listener to notify */
+    private final Listener _listener;
+    /** hub event message handler */
+    private final AbstractMessageHandler _handler;
+
+    /**
+     * Constructor
+     *
+     * @param listener listener to notify
+     */
+    public HubClientTracker(final Listener listener) {
+        _listener = listener;
+
+        _handler = new AbstractMessageHandler(new String[]{MTYPE_REGISTER, MTYPE_UNREGISTER, MTYPE_METADATA, MTYPE_SUBSCRIPTIONS}) {
+            /**
+             * Implements hub event processing
+             *
+             * @param connection hub connection
+             * @param senderId public ID of sender client (hub)
+             * @param message hub event
+             */
+            @Override
+            public Map<?, ?> processCall(final HubConnection connection, final String senderId, final Message message) {
+                handleHubEvent(message);
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Subscribe to hub events and load clients already registered
+     */
+    public void start() {
+        final HubConnector connector = SampManager.getGuiHubConnector();
+
+        // Subscribe to hub events first to miss no event while loading registered clients:
+        connector.addMessageHandler(_handler);
+        connector.declareSubscriptions(connector.computeSubscriptions());
+
+        // Reload clients when the hub connection changes (disconnection, hub restart):
+        connector.addConnectionListener(new ChangeListener() {
+            @Override
+            public void stateChanged(final ChangeEvent ce) {
+                reload(connector);
+            }
+        });
+
+        reload(connector);
+    }
+
+    /**
+     * Replace the tracked clients by the clients currently registered on the hub (none if disconnected)
+     * and notify every added or removed client
+     *
+     * @param connector hub connector
+     */
+    private void reload(final HubConnector connector) {
+        final Set<String> changedIds = new HashSet<String>(64);
+
+        // Hold the lock while loading so that concurrent hub events apply after (unregistered clients are not restored):
+        synchronized (_clients) {
+            changedIds.addAll(_clients.keySet());
+            _clients.clear();
+
+            try {
+                final HubConnection connection = connector.getConnection();
+                if (connection != null) {
+                    for (String clientId : connection.getRegisteredClients()) {
+                        _clients.put(clientId, new HubClient(clientId, connection.getMetadata(clientId), connection.getSubscriptions(clientId)));
+                    }
+                }
+            } catch (SampException se) {
+                _logger.warn("Unable to retrieve registered SAMP clients:", se);
+            }
+            changedIds.addAll(_clients.keySet());
+        }
+        _logger.info("Tracking {} registered SAMP clients.", _clients.size());
+
+        for (String clientId : changedIds) {
+            _listener.clientChanged(clientId);
+        }
+    }
+
+    /**
+     * Return the registered client given its identifier
+     *
+     * @param clientId client identifier
+     * @return registered client or null if not registered
+     */
+    public Client getClient(final String clientId) {
+        return _clients.get(clientId);
+    }
+
+    /**
+     * @return identifiers of the registered clients (live view)
+     */
+    public Collection<String> getClientIds() {
+        return Collections.unmodifiableSet(_clients.keySet());
+    }
+
+    /**
+     * Update the registered clients with the given hub event
+     *
+     * @param message hub event
+     */
+    private void handleHubEvent(final Message message) {
+        final String mType = message.getMType();
+        final String clientId = (String) message.getParam(PARAM_ID);
+        if (clientId == null) {
+            return;
+        }
+        _logger.trace("handleHubEvent: {} [{}]", mType, clientId);
+
+        synchronized (_clients) {
+            final HubClient previous = _clients.get(clientId);
+
+            if (MTYPE_UNREGISTER.equals(mType)) {
+                if (previous == null) {
+                    return;
+                }
+                _clients.remove(clientId);
+            } else if (MTYPE_REGISTER.equals(mType)) {
+                if (previous != null) {
+                    return;
+                }
+                _clients.put(clientId, new HubClient(clientId, null, null));
+            } else if (MTYPE_METADATA.equals(mType)) {
+                final Map<?, ?> metadata = (Map<?, ?>) message.getParam(PARAM_METADATA);
+                _clients.put(clientId, new HubClient(clientId, (metadata != null) ? new Metadata(metadata) : null,
+                        (previous != null) ? previous.getSubscriptions() : null));
+            } else if (MTYPE_SUBSCRIPTIONS.equals(mType)) {
+                final Map<?, ?> subscriptions = (Map<?, ?>) message.getParam(PARAM_SUBSCRIPTIONS);
+                _clients.put(clientId, new HubClient(clientId, (previous != null) ? previous.getMetadata() : null,
+                        (subscriptions != null) ? new Subscriptions(subscriptions) : null));
+            } else {
+                return;
+            }
+        }
+
+        _listener.clientChanged(clientId);
+    }
+
+    /**
+     * Immutable snapshot of one registered client
+     */
+    private static final class HubClient implements Client {
+
+        /** client identifier */
+        private final String _id;
+        /** client metadata (may be null) */
+        private final Metadata _metadata;
+        /** client subscriptions (may be null) */
+        private final Subscriptions _subscriptions;
+
+        /**
+         * Constructor
+         * @param id client identifier
+         * @param metadata client metadata (may be null)
+         * @param subscriptions client subscriptions (may be null)
+         */
+        HubClient(final String id, final Metadata metadata, final Subscriptions subscriptions) {
+            _id = id;
+            _metadata = metadata;
+            _subscriptions = subscriptions;
+        }
+
+        @Override
+        public String getId() {
+            return _id;
+        }
+
+        @Override
+        public Metadata getMetadata() {
+            return _metadata;
+        }
+
+        @Override
+        public Subscriptions getSubscriptions() {
+            return _subscriptions;
+        }
+
+        @Override
+        public String toString() {
+            return _id;
+        }
+    }
+}
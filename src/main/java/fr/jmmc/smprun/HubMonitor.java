@@ -29,17 +29,29 @@ import fr.jmmc.smprsc.data.stub.StubMetaData;
 import fr.jmmc.smprun.preference.PreferenceKey;
 import fr.jmmc.smprun.preference.Preferences;
 import fr.jmmc.smprun.stub.ClientStub;
+import fr.jmmc.smprun.stub.MessageSpool;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import javax.swing.event.ListDataEvent;
-import javax.swing.event.ListDataListener;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.astrogrid.samp.Client;
 import org.astrogrid.samp.Metadata;
-import org.astrogrid.samp.gui.SubscribedClientListModel;
+import org.astrogrid.samp.Subscriptions;
 import fr.jmmc.jmcs.util.concurrent.ThreadExecutors;
 import fr.jmmc.smprsc.data.stub.model.Type;
 import org.slf4j.Logger;
@@ -47,6 +59,7 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Monitor hub connections (register / unregister) for MTypes corresponding to all client stubs.
+ * Hub events are consumed by a HubClientTracker (no Swing list model involved).
  * 
  * @author Sylvain LAFRASSE, Laurent BOURGES
  */
@@ -54,17 +67,49 @@ public final class HubMonitor {
 
     /** Logger */
     private static final Logger _logger = LoggerFactory.getLogger(HubMonitor.class.getName());
+    /** Maximum number of client stubs connecting to the hub at the same time */
+    private static final int MAX_CONCURRENT_STUB_STARTS = Math.max(4, Math.min(8, Runtime.getRuntime().availableProcessors()));
     /** HubMonitor singleton */
     private static final HubMonitor INSTANCE = new HubMonitor();
     /* members  */
     /** mType array containing all unique MTypes handled by all applications */
     private final String[] _mTypesStrings;
-    /** Registered SAMP recipients corresponding to mType array */
-    private final SubscribedClientListModel _capableClients;
+    /** Registered SAMP clients (updated by hub events) */
+    private final HubClientTracker _clientTracker;
     /** Dedicated thread executor */
     private final ThreadExecutors _executor;
-    /** List of unique client stubs needed to be started ASAP */
-    private Set<ClientStub> _clientStubsToStart = new LinkedHashSet<ClientStub>();
+    /** Scheduler used to coalesce hub events */
+    private final ScheduledExecutorService _eventScheduler;
+    /** quiet delay in milliseconds: wait for this delay without new hub event before processing */
+    private final long _eventQuietDelay;
+    /** maximum delay in milliseconds between the first pending hub event and its processing */
+    private final long _eventMaxLatency;
+    /** lock protecting pending hub event fields */
+    private final Object _eventLock = new Object();
+    /** identifiers of the clients changed since the last pass (guarded by _eventLock) */
+    private Set<String> _pendingClientIds = new HashSet<String>();
+    /** scheduled processing of the pending client changes (guarded by _eventLock) */
+    private ScheduledFuture<?> _pendingPass = null;
+    /** time (nanoseconds) of the first pending hub event (guarded by _eventLock) */
+    private long _firstPendingEventTime = 0L;
+    /** number of hub events coalesced into the pending pass (guarded by _eventLock) */
+    private int _pendingEventCount = 0;
+    /** Bounded thread pool used to connect client stubs to the hub concurrently */
+    private final ThreadPoolExecutor _stubStartExecutor;
+    /** Application names of the unique client stubs needed to be started ASAP (dedicated thread only) */
+    private Set<String> _clientStubsToStart = new LinkedHashSet<String>();
+    /** Application names of the client stubs being started right now (dedicated thread only) */
+    private final Set<String> _startingClientStubs = new HashSet<String>();
+    /** Completed once no client stub is waiting to start or being started (renewed when new stubs must start) */
+    private volatile CompletableFuture<Void> _allStubsStarted = new CompletableFuture<Void>();
+    /** Capable clients of the last pass keyed by client identifier (dedicated thread only) */
+    private final Map<String, TrackedClient> _trackedClients = new HashMap<String, TrackedClient>();
+    /** Capable clients of the last pass indexed by normalized application name (dedicated thread only) */
+    private final Map<String, List<TrackedClient>> _clientIndex = new HashMap<String, List<TrackedClient>>();
+    /** Application names of the client stubs indexed by normalized application name (built on first pass) */
+    private Map<String, List<String>> _stubIndex = null;
+    /** Application names of the client stubs to check again on the next pass (failed to start) */
+    private final Set<String> _stubsToRecheck = new HashSet<String>();
     /** Map of sniffed real application meta-data */
     private HashMap<String, StubMetaData> _sniffedRealApplications = new HashMap<String, StubMetaData>();
 
@@ -81,40 +126,55 @@ public final class HubMonitor {
     private HubMonitor() {
         _logger.info("HubMonitor()");
 
-        _mTypesStrings = ComputeMTypeArray();
-        _capableClients = SampManager.createSubscribedClientListModel(_mTypesStrings);
+        // Create dedicated thread executor:
+        _executor = ThreadExecutors.getSingleExecutor(getClass().getSimpleName() + "ThreadPool");
 
-        // Monitor any modification to the capable clients list
-        _capableClients.addListDataListener(new ListDataListener() {
-            @Override
-            public void contentsChanged(final ListDataEvent e) {
-                _logger.trace("ListDataListener.contentsChanged");
-                handleHubEvent();
-            }
+        // Create bounded thread pool to connect stubs (new stubs wait in _clientStubsToStart when all threads are busy):
+        _stubStartExecutor = new ThreadPoolExecutor(MAX_CONCURRENT_STUB_STARTS, MAX_CONCURRENT_STUB_STARTS, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    /** thread counter */
+                    private final AtomicInteger _count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        final Thread thread = new Thread(r, HubMonitor.class.getSimpleName() + "StubStarter-" + _count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        _stubStartExecutor.allowCoreThreadTimeOut(true);
+
+        // Create the scheduler used to coalesce bursts of hub events:
+        final Preferences preferences = Preferences.getInstance();
+        _eventQuietDelay = Math.max(0, preferences.getPreferenceAsInt(PreferenceKey.HUB_EVENT_QUIET_DELAY));
+        _eventMaxLatency = Math.max(_eventQuietDelay, preferences.getPreferenceAsInt(PreferenceKey.HUB_EVENT_MAX_LATENCY));
 
+        _eventScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
             @Override
-            public void intervalAdded(final ListDataEvent e) {
-                _logger.trace("ListDataListener.intervalAdded");
-                handleHubEvent();
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, HubMonitor.class.getSimpleName() + "EventCoalescer");
+                thread.setDaemon(true);
+                return thread;
             }
+        });
 
+        _mTypesStrings = ComputeMTypeArray();
+
+        // Monitor any modification to the registered clients
+        _clientTracker = new HubClientTracker(new HubClientTracker.Listener() {
             @Override
-            public void intervalRemoved(final ListDataEvent e) {
-                _logger.trace("ListDataListener.intervalRemoved");
-                // note: this event is never invoked by JSamp code (1.3) !
-                handleHubEvent();
+            public void clientChanged(final String clientId) {
+                handleHubEvent(clientId);
             }
         });
-
-        // Create dedicated thread executor:
-        _executor = ThreadExecutors.getSingleExecutor(getClass().getSimpleName() + "ThreadPool");
+        _clientTracker.start();
 
         // Analize already registered samp clients
-        handleHubEvent();
+        handleHubEvent(null);
     }
 
     public boolean isIdle() {
-        return (_executor.getExecutor().getActiveCount() == 0 ? true : false);
+        return (_executor.getExecutor().getActiveCount() == 0 && _stubStartExecutor.getActiveCount() == 0);
     }
 
     /**
@@ -141,40 +201,87 @@ public final class HubMonitor {
     }
 
     /**
-     * Waits for stubs startup to complete
+     * Return the future completed once all client stubs are started
+     *
+     * @return future completed once no client stub is waiting to start or being started
      */
-    public void waitForStubsStartup() {
-        while (isThereSomeStubsLeftToStart()) {
-            _logger.debug("Waiting for stubs startup to complete...");
-            try {
-                Thread.sleep(100L);
-            } catch (InterruptedException ie) {
-                _logger.error("Interrupted while waiting for stubs startup to complete.", ie);
-            }
-        }
+    public CompletableFuture<Void> getAllStubsStartedFuture() {
+        return _allStubsStarted;
     }
 
     /**
-     * @return true if there is still stubs to be started 
+     * Waits for stubs startup to complete
      */
-    private boolean isThereSomeStubsLeftToStart() {
-        return _clientStubsToStart.size() > 0;
+    public void waitForStubsStartup() {
+        _logger.debug("Waiting for stubs startup to complete...");
+        try {
+            getAllStubsStartedFuture().get();
+        } catch (InterruptedException ie) {
+            _logger.error("Interrupted while waiting for stubs startup to complete.", ie);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ee) {
+            _logger.error("Failure while waiting for stubs startup to complete.", ee.getCause());
+        }
     }
 
     /**
      * Process hub clients in background using the dedicated thread executor
+     *
+     * @param clientId identifier of the changed client or null to only request a pass
      */
-    private void handleHubEvent() {
+    private void handleHubEvent(final String clientId) {
 
         if (!ThreadExecutors.isRunning()) {
             return;
         }
 
-        // First copy the content of the list model to avoid concurrency issues
-        final int size = _capableClients.getSize();
-        final Client[] clients = new Client[size];
-        for (int i = 0; i < size; i++) {
-            clients[i] = (Client) _capableClients.getElementAt(i);
+        synchronized (_eventLock) {
+            if (clientId != null) {
+                _pendingClientIds.add(clientId);
+            }
+            _pendingEventCount++;
+
+            final long now = System.nanoTime();
+
+            if (_pendingPass == null) {
+                _firstPendingEventTime = now;
+            } else if (!_pendingPass.cancel(false)) {
+                // The pending pass is starting: it will process this change
+                return;
+            }
+
+            // Wait for the quiet delay but do not exceed the maximum latency since the first pending event:
+            final long remaining = _eventMaxLatency - TimeUnit.NANOSECONDS.toMillis(now - _firstPendingEventTime);
+            final long delay = Math.max(0L, Math.min(_eventQuietDelay, remaining));
+
+            _pendingPass = _eventScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flushHubEvents();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Process the pending client changes using the dedicated thread executor
+     */
+    private void flushHubEvents() {
+        final Set<String> clientIds;
+        synchronized (_eventLock) {
+            clientIds = _pendingClientIds;
+
+            if (_pendingEventCount > 1) {
+                _logger.debug("Coalesced {} hub events into one pass.", _pendingEventCount);
+            }
+
+            _pendingClientIds = new HashSet<String>();
+            _pendingPass = null;
+            _pendingEventCount = 0;
+        }
+
+        if (!ThreadExecutors.isRunning()) {
+            return;
         }
 
         _executor.submit(new Runnable() {
@@ -183,17 +290,18 @@ public final class HubMonitor {
              */
             @Override
             public void run() {
-                loopOverHubClients(clients);
+                loopOverHubClients(clientIds);
             }
         });
     }
 
     /**
      * Handle changes on registered SAMP recipients:
+     * only process added, changed or removed clients since the previous pass.
      * 
-     * @param clients current hub registered clients
+     * @param clientIds identifiers of the clients changed since the previous pass
      */
-    private void loopOverHubClients(final Client[] clients) {
+    private void loopOverHubClients(final Set<String> clientIds) {
 
         if (!ThreadExecutors.isRunning()) {
             _logger.info("Discarding call - shutdown in progress.");
@@ -202,91 +310,299 @@ public final class HubMonitor {
 
         _logger.debug("loopOverHubClients() - start");
 
-        final Collection<ClientStub> clientStubList = HubPopulator.getClientStubMap().values();
-        for (ClientStub stub : clientStubList) {
+        // Application keys (normalized names) impacted by these changes
+        final Set<String> changedKeys = new HashSet<String>();
+        // Clients added or modified since the previous pass
+        final List<TrackedClient> updatedClients = new ArrayList<TrackedClient>();
 
-            final String stubName = stub.getApplicationName();
-            boolean recipientFound = false;
+        for (String clientId : clientIds) {
+            final Client client = _clientTracker.getClient(clientId);
 
-            // Check each registered clients for the sought recipient name
-            for (Client client : clients) {
-                final Metadata md = client.getMetadata();
-                
-                if (md != null) {
-                    final String clientName = md.getName();
+            // Only consider fully registered clients (meta data) subscribed to monitored mTypes
+            final Metadata md = (client != null && isCapable(client)) ? client.getMetadata() : null;
 
-                    if (clientName.matches(stubName)) {
-                        recipientFound = true;
+            final TrackedClient previous = _trackedClients.get(clientId);
 
-                        final String recipientId = client.getId();
+            if (md == null || md.getName() == null) {
+                // Client unregistered (or no longer capable)
+                if (previous != null) {
+                    _trackedClients.remove(clientId);
+                    removeFromIndex(previous);
+                    changedKeys.add(previous.key);
+                }
+                continue;
+            }
 
-                        // If current client is one of our STUB
-                        final Object clientIsAStubFlag = md.get(SampMetaData.getStubMetaDataId(clientName));
-                        if (SampMetaData.STUB_TOKEN.equals(clientIsAStubFlag)) {
-                            _logger.debug("Found STUB recipient '{}' [{}]: leaving it alone.", clientName, recipientId);
-                        } else {
+            if (previous == null || !previous.isSameAs(md, client.getSubscriptions())) {
+                if (previous != null) {
+                    removeFromIndex(previous);
+                    changedKeys.add(previous.key);
+                }
+                final TrackedClient current = new TrackedClient(client, md);
+                addToIndex(current);
+                changedKeys.add(current.key);
+                updatedClients.add(current);
+                _trackedClients.put(clientId, current);
+            }
+        }
+
+        // Only check stubs whose application changed (all stubs on the first pass)
+        final Collection<String> stubsToCheck;
+        if (_stubIndex == null) {
+            stubsToCheck = HubPopulator.getApplicationNames();
 
-                            if (stub.isConnected()) {
-                                _logger.info("Found REAL recipient '{}' [{}]: running STUB trickery !", clientName, recipientId);
+            _stubIndex = new HashMap<String, List<String>>(stubsToCheck.size() * 2);
+            for (String applicationName : stubsToCheck) {
+                final String key = getApplicationKey(applicationName);
 
-                                // Retrieve real application metadata for sniffing purpose
-                                retrieveRealRecipientMetadata(client);
+                List<String> stubs = _stubIndex.get(key);
+                if (stubs == null) {
+                    stubs = new ArrayList<String>(1);
+                    _stubIndex.put(key, stubs);
+                }
+                stubs.add(applicationName);
+            }
+        } else {
+            stubsToCheck = new LinkedHashSet<String>(_stubsToRecheck);
+            _stubsToRecheck.clear();
+
+            for (String key : changedKeys) {
+                final List<String> stubs = _stubIndex.get(key);
+                if (stubs != null) {
+                    stubsToCheck.addAll(stubs);
+                }
+            }
+        }
+
+        _logger.debug("loopOverHubClients(): {} changed application(s), {} stub(s) to check.", changedKeys.size(), stubsToCheck.size());
+
+        for (String applicationName : stubsToCheck) {
+            checkClientStub(applicationName);
+        }
+
+        if (!_clientStubsToStart.isEmpty()) {
+            _logger.info("Stub recipients waiting to start: {}", _clientStubsToStart);
+        }
+
+        // Start as many client stubs as possible in parallel
+        startPendingStubs();
+
+        // Check new or modified clients for unknown applications
+        for (TrackedClient trackedClient : updatedClients) {
+            retrieveRealRecipientMetadata(trackedClient.client, trackedClient.metadata);
+        }
+        _logger.debug("loopOverHubClients() - done");
+    }
+
+    /**
+     * Match the client stub of the given application against registered clients having the same application name
+     * (dedicated thread only): the client stub is only created when it must be started or replay spooled messages
+     *
+     * @param stubName application name of the client stub to check
+     */
+    private void checkClientStub(final String stubName) {
+
+        // Client stub (null if not created yet i.e. never started):
+        final ClientStub stub = HubPopulator.getCreatedClientStub(stubName);
+        boolean recipientFound = false;
+
+        // Check registered clients having the sought recipient name
+        final List<TrackedClient> matchingClients = _clientIndex.get(getApplicationKey(stubName));
+        if (matchingClients != null) {
+            for (TrackedClient trackedClient : matchingClients) {
+                final Client client = trackedClient.client;
+                final Metadata md = trackedClient.metadata;
+                final String clientName = md.getName();
+                recipientFound = true;
+
+                final String recipientId = client.getId();
+
+                // If current client is one of our STUB
+                final Object clientIsAStubFlag = md.get(SampMetaData.getStubMetaDataId(clientName));
+                if (SampMetaData.STUB_TOKEN.equals(clientIsAStubFlag)) {
+                    _logger.debug("Found STUB recipient '{}' [{}]: leaving it alone.", clientName, recipientId);
+                } else {
 
-                                // Perform callback on client stub in background
-                                handleNewRealRecipientDetection(stub, recipientId);
-                            } else {
-                                _logger.info("Found REAL recipient '{}' [{}]: but the STUB is already disconnected.", clientName, recipientId);
+                    if (stub != null && stub.isConnected()) {
+                        _logger.info("Found REAL recipient '{}' [{}]: running STUB trickery !", clientName, recipientId);
+
+                        // Retrieve real application metadata for sniffing purpose
+                        retrieveRealRecipientMetadata(client, md);
+
+                        // Perform callback on client stub in background
+                        handleNewRealRecipientDetection(stub, recipientId);
+                    } else {
+                        _logger.info("Found REAL recipient '{}' [{}]: but the STUB is already disconnected.", clientName, recipientId);
+
+                        // Do not start this stub anymore
+                        _clientStubsToStart.remove(stubName);
+
+                        // Deliver messages spooled before the last exit (if any)
+                        if (stub != null) {
+                            if (stub.hasPendingMessages()) {
+                                handleSpooledMessagesReplay(stub, recipientId);
                             }
+                        } else if (MessageSpool.exists(stubName)) {
+                            handleSpooledMessagesReplay(HubPopulator.retrieveClientStub(stubName), recipientId);
                         }
-
-                        // Do not exit from loop as we can have two SAMP clients having the same application name: real and stub for example.
                     }
                 }
+
+                // Do not exit from loop as we can have two SAMP clients having the same application name: real and stub for example.
             }
+        }
 
-            // If no real nor stub recipient found for application name
-            if (!recipientFound) {
+        // If no real nor stub recipient found for application name
+        if (!recipientFound) {
 
-                if (stub.isConnected()) {
-                    // Happens for web applications without SAMP capability. If the stub is already connected, a client was necessarly found.
-                    if (stub.getExecutionType() == Type.WEB) {
-                        _logger.debug("Found NO recipient at all for '{}' (web application).", stubName);
-                    } else {
-                        // Could happen until the Samp clients are updated (one event per client) ! 
-                        // If the stub is already connected, a client was necesserarly found.
-                        _logger.debug("Found NO recipient at all for '{}': but the STUB is already connected.", stubName);
-                    }
+            if (stub != null && stub.isConnected()) {
+                // Happens for web applications without SAMP capability. If the stub is already connected, a client was necessarly found.
+                if (stub.getExecutionType() == Type.WEB) {
+                    _logger.debug("Found NO recipient at all for '{}' (web application).", stubName);
                 } else {
-                    _logger.debug("Found NO recipient at all for '{}': scheduling corresponding STUB startup.", stubName);
+                    // Could happen until the Samp clients are updated (one event per client) ! 
+                    // If the stub is already connected, a client was necesserarly found.
+                    _logger.debug("Found NO recipient at all for '{}': but the STUB is already connected.", stubName);
+                }
+            } else if (_startingClientStubs.contains(stubName)) {
+                _logger.debug("Found NO recipient at all for '{}': but the STUB is already starting.", stubName);
+            } else {
+                _logger.debug("Found NO recipient at all for '{}': scheduling corresponding STUB startup.", stubName);
+
+                // Schedule stub for startup (by adding it to the unique set of client stubs to start asap)
+                _clientStubsToStart.add(stubName);
+            }
+        }
+    }
 
-                    // Schedule stub for startup (by adding it to the unique set of client stubs to start asap)
-                    _clientStubsToStart.add(stub);
+    /**
+     * Return true if the given client is subscribed to at least one monitored mType
+     *
+     * @param client client to check
+     * @return true if the given client is subscribed to at least one monitored mType
+     */
+    private boolean isCapable(final Client client) {
+        final Subscriptions subscriptions = client.getSubscriptions();
+        if (subscriptions != null) {
+            for (String mType : _mTypesStrings) {
+                if (subscriptions.isSubscribed(mType)) {
+                    return true;
                 }
             }
         }
+        return false;
+    }
 
-        if (isThereSomeStubsLeftToStart()) {
-            _logger.info("Stub recipients waiting to start: {}", _clientStubsToStart);
+    /**
+     * Add the given client to the application name index (dedicated thread only)
+     *
+     * @param trackedClient client to add
+     */
+    private void addToIndex(final TrackedClient trackedClient) {
+        List<TrackedClient> trackedClients = _clientIndex.get(trackedClient.key);
+        if (trackedClients == null) {
+            trackedClients = new ArrayList<TrackedClient>(2);
+            _clientIndex.put(trackedClient.key, trackedClients);
+        }
+        trackedClients.add(trackedClient);
+    }
 
-            // Do launch one client stub at a time (hub will then send one registration event that will cause this method to be invoked again soon for those left)
-            final Iterator<ClientStub> it = _clientStubsToStart.iterator();
-            if (it.hasNext()) {
-                final ClientStub first = it.next();
+    /**
+     * Remove the given client from the application name index (dedicated thread only)
+     *
+     * @param trackedClient client to remove
+     */
+    private void removeFromIndex(final TrackedClient trackedClient) {
+        final List<TrackedClient> trackedClients = _clientIndex.get(trackedClient.key);
+        if (trackedClients != null) {
+            trackedClients.remove(trackedClient);
+            if (trackedClients.isEmpty()) {
+                _clientIndex.remove(trackedClient.key);
+            }
+        }
+    }
 
-                _logger.info("Starting STUB recipient '{}'.", first);
-                first.connect();
+    /**
+     * Submit waiting client stubs to the bounded stub start thread pool (dedicated thread only).
+     * At most MAX_CONCURRENT_STUB_STARTS stubs are connecting at the same time: the others remain in the waiting queue
+     * until one running start completes.
+     */
+    private void startPendingStubs() {
+
+        final Iterator<String> it = _clientStubsToStart.iterator();
+        while (it.hasNext() && _startingClientStubs.size() < MAX_CONCURRENT_STUB_STARTS) {
+            final String stubName = it.next();
+
+            // Remove this one from the waiting queue
+            it.remove();
+            _startingClientStubs.add(stubName);
+
+            _stubStartExecutor.submit(new Runnable() {
+                /**
+                 * Create (on first use) and connect the client stub using one pool thread
+                 */
+                @Override
+                public void run() {
+                    ClientStub stub = null;
+                    try {
+                        // Real application may have registered since the stub was scheduled:
+                        if (isRealApplicationRegistered(stubName)) {
+                            _logger.info("Skipping STUB recipient '{}': real application already registered.", stubName);
+                        } else {
+                            _logger.info("Starting STUB recipient '{}'.", stubName);
+                            stub = HubPopulator.retrieveClientStub(stubName);
+                            stub.connect();
+                        }
+                    } finally {
+                        final boolean connected = (stub != null) && stub.isConnected();
+                        _executor.submit(new Runnable() {
+                            @Override
+                            public void run() {
+                                _startingClientStubs.remove(stubName);
+
+                                if (!connected) {
+                                    // Check it again on next hub event
+                                    _stubsToRecheck.add(stubName);
+                                }
+
+                                // Start the next waiting ones
+                                startPendingStubs();
+                            }
+                        });
+                    }
+                }
+            });
+        }
 
-                // Remove this one from the waiting queue
-                it.remove();
+        if (_clientStubsToStart.isEmpty() && _startingClientStubs.isEmpty()) {
+            if (_allStubsStarted.complete(null)) {
+                _logger.info("All client stubs started.");
+                StatusBar.show("all applications started.");
             }
+        } else if (_allStubsStarted.isDone()) {
+            // New stubs to start: waiters will use a new future
+            _allStubsStarted = new CompletableFuture<Void>();
         }
+    }
 
-        // Check each registered clients for unknown applications
-        for (Client client : clients) {
-            retrieveRealRecipientMetadata(client);
+    /**
+     * Return true if a real (i.e. not a stub) SAMP client with the given application name is registered on the hub.
+     *
+     * @param applicationName application name to look for
+     * @return true if the real application is registered, false otherwise
+     */
+    public static boolean isRealApplicationRegistered(final String applicationName) {
+        final List<String> clientIds = SampManager.getClientIdsForName(applicationName);
+        if (clientIds != null) {
+            for (String clientId : clientIds) {
+                final Client client = SampManager.getClient(clientId);
+                final Metadata md = (client != null) ? client.getMetadata() : null;
+                if (md != null && !SampMetaData.STUB_TOKEN.equals(md.get(SampMetaData.getStubMetaDataId(md.getName())))) {
+                    return true;
+                }
+            }
         }
-        _logger.debug("loopOverHubClients() - done");
-        StatusBar.show("all applications started.");
+        return false;
     }
 
     /**
@@ -299,7 +615,7 @@ public final class HubMonitor {
 
         ThreadExecutors.getGenericExecutor().submit(new Runnable() {
             /**
-             * Process application registration using dedicated thread (may sleep for few seconds ...)
+             * Process application registration using dedicated thread (forwarding is then scheduled by the stub)
              */
             @Override
             public void run() {
@@ -308,13 +624,42 @@ public final class HubMonitor {
         });
     }
 
+    /**
+     * Replay messages spooled by the given stub to the given real application
+     *
+     * @param stub disconnected client stub having pending messages
+     * @param recipientId recipient identifier of the real application
+     */
+    private void handleSpooledMessagesReplay(final ClientStub stub, final String recipientId) {
+
+        ThreadExecutors.getGenericExecutor().submit(new Runnable() {
+            /**
+             * Send spooled messages using dedicated thread
+             */
+            @Override
+            public void run() {
+                stub.replayPendingMessages(recipientId);
+            }
+        });
+    }
+
+    /**
+     * Return the key used to match hub clients and client stubs by application name
+     *
+     * @param applicationName application name
+     * @return normalized application name
+     */
+    private static String getApplicationKey(final String applicationName) {
+        return FileUtils.cleanupFileName(applicationName.trim());
+    }
+
     /**
      * Collect all real application meta-data.
      * 
      * @param client the real application
+     * @param md the real application meta-data
      */
-    private void retrieveRealRecipientMetadata(final Client client) {
-        final Metadata md = client.getMetadata();
+    private void retrieveRealRecipientMetadata(final Client client, final Metadata md) {
         if (md != null) {
             final String clientName = md.getName();
 
@@ -336,4 +681,40 @@ public final class HubMonitor {
             }
         }
     }
+
+    /**
+     * Registered client with its meta-data and subscriptions (as seen in the last pass)
+     */
+    private static final class TrackedClient {
+
+        /** registered client */
+        final Client client;
+        /** normalized application name */
+        final String key;
+        /** client meta-data */
+        final Metadata metadata;
+        /** client subscriptions (may be null) */
+        final Subscriptions subscriptions;
+
+        /**
+         * Constructor
+         * @param client registered client
+         * @param metadata client meta-data
+         */
+        TrackedClient(final Client client, final Metadata metadata) {
+            this.client = client;
+            this.key = getApplicationKey(metadata.getName());
+            this.metadata = metadata;
+            this.subscriptions = client.getSubscriptions();
+        }
+
+        /**
+         * @param md current client meta-data
+         * @param subs current client subscriptions
+         * @return true if the given meta-data and subscriptions are the same as the tracked ones
+         */
+        boolean isSameAs(final Metadata md, final Subscriptions subs) {
+            return metadata.equals(md) && ((subscriptions == null) ? (subs == null) : subscriptions.equals(subs));
+        }
+    }
 }
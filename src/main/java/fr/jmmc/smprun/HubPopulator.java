@@ -19,20 +19,27 @@
  ******************************************************************************/
 package fr.jmmc.smprun;
 
-import fr.jmmc.smprsc.data.list.StubRegistry;
+import fr.jmmc.jmcs.util.concurrent.ThreadExecutors;
 import fr.jmmc.smprsc.data.list.model.Category;
-import fr.jmmc.smprsc.data.stub.StubMetaData;
-import fr.jmmc.smprsc.data.stub.model.SampStub;
 import fr.jmmc.smprun.preference.PreferenceKey;
 import fr.jmmc.smprun.preference.Preferences;
 import fr.jmmc.smprun.stub.ClientStub;
+import fr.jmmc.smprun.stub.StubDescriptor;
 import fr.jmmc.smprun.stub.StubMonitor;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Start all known stubs.
+ * Load all known stub descriptors; client stubs are only created on first use
+ * (hub monitoring, dock click or AppLauncher self-test).
  * 
  * @author Sylvain LAFRASSE, Laurent BOURGES
  */
@@ -40,13 +47,19 @@ public final class HubPopulator {
 
     /** Class logger */
     private static final Logger _logger = LoggerFactory.getLogger(HubPopulator.class.getName());
+    /** Maximum number of threads used to load stub descriptors in parallel */
+    private static final int MAX_POPULATION_THREADS = 4;
     /** HubPopulator singleton */
     private static HubPopulator _singleton = null;
     /* members */
-    /** Client family  / client stub mapping */
-    private EnumMap<Category, List<ClientStub>> _familyLists = new EnumMap<Category, List<ClientStub>>(Category.class);
-    /** Client stub map keyed by application name */
-    HashMap<String, ClientStub> _clientStubMap = new HashMap<String, ClientStub>(32);
+    /** Client family  / application names mapping */
+    private EnumMap<Category, List<String>> _familyLists = new EnumMap<Category, List<String>>(Category.class);
+    /** Stub descriptors keyed by application name (registry order, read-only once populated) */
+    private final Map<String, StubDescriptor> _descriptorMap = new LinkedHashMap<String, StubDescriptor>(64);
+    /** Created client stubs keyed by application name */
+    private final ConcurrentHashMap<String, ClientStub> _clientStubMap = new ConcurrentHashMap<String, ClientStub>(32);
+    /** Parsed stub registry (binary snapshot or XML registry) */
+    private final StubRegistryCache _registryCache;
 
     /**
      * Return the HubPopulator singleton
@@ -60,57 +73,181 @@ public final class HubPopulator {
     }
 
     /**
-     * Constructor: create meta data for SAMP applications
+     * Constructor: load the descriptors of the SAMP applications
      */
     private HubPopulator() {
 
-        // For each known category
+        final long start = System.nanoTime();
+
+        _registryCache = StubRegistryCache.load();
+
+        final Preferences preferences = Preferences.getInstance();
+
+        // If the user asked through preferences not to start all stubs
+        final boolean startSelectedStubs = preferences.getPreferenceAsBoolean(PreferenceKey.START_SELECTED_STUBS);
+
+        // Forge the ordered list of application names to create for each known category
+        final EnumMap<Category, List<String>> categoryApplicationNames = new EnumMap<Category, List<String>>(Category.class);
         for (Category currentCategory : Category.values()) {
 
-            // Forge the list of stub for the current category
-            List<ClientStub> currentCategoryClientList = new ArrayList<ClientStub>();
+            final List<String> selectedApplicationNames = new ArrayList<String>();
 
             // For each application name of the category
-            List<String> applicationNames = StubRegistry.getCategoryApplicationNames(currentCategory);
+            List<String> applicationNames = _registryCache.getCategoryApplicationNames(currentCategory);
             for (String applicationName : applicationNames) {
 
-                // If the user asked through preferences not to start all stubs
-                final Preferences preferences = Preferences.getInstance();
-                if (preferences.getPreferenceAsBoolean(PreferenceKey.START_SELECTED_STUBS)) {
-
-                    // If the current application stub should not be created (i.e was not selected by the iser)
-                    if (!preferences.isApplicationNameSelected(applicationName)) {
-                        _logger.debug("Skipping unwanted '{}' application.", applicationName);
-                        continue; // Skip stub creation
-                    }
+                // If the current application stub should not be created (i.e was not selected by the iser)
+                if (startSelectedStubs && !preferences.isApplicationNameSelected(applicationName)) {
+                    _logger.debug("Skipping unwanted '{}' application.", applicationName);
+                    continue; // Skip stub creation
                 }
 
-                _logger.debug("Loading '{}' category's stub '{}' data from resource.", currentCategory.value(), applicationName);
-                final ClientStub newClientStub = createClientStub(applicationName);
-                currentCategoryClientList.add(newClientStub);
+                selectedApplicationNames.add(applicationName);
             }
 
-            _familyLists.put(currentCategory, currentCategoryClientList);
+            categoryApplicationNames.put(currentCategory, selectedApplicationNames);
+        }
+
+        // Cumulated time spent loading each stub descriptor (i.e. sequential cost)
+        final AtomicLong descriptorLoadTime = new AtomicLong();
+
+        if (preferences.getPreferenceAsBoolean(PreferenceKey.PARALLEL_STUB_POPULATION)) {
+            populateInParallel(categoryApplicationNames, descriptorLoadTime);
+        } else {
+            populateSequentially(categoryApplicationNames, descriptorLoadTime);
         }
 
+        final long elapsed = System.nanoTime() - start;
+
         _logger.info("configuration: {}", _familyLists);
+        _logger.info("Loaded {} stub descriptors in {} ms (sequential cost: {} ms, saved: {} ms).",
+                _descriptorMap.size(), TimeUnit.NANOSECONDS.toMillis(elapsed), TimeUnit.NANOSECONDS.toMillis(descriptorLoadTime.get()),
+                TimeUnit.NANOSECONDS.toMillis(Math.max(0L, descriptorLoadTime.get() - elapsed)));
+
+        // Update the registry snapshot in background (off the startup critical path):
+        ThreadExecutors.getGenericExecutor().submit(new Runnable() {
+            @Override
+            public void run() {
+                _registryCache.saveIfModified();
+            }
+        });
     }
 
     /**
-     * Create a new Client Stub using given arguments and store it in collections
+     * Load stub descriptors one at a time using the current thread
+     *
+     * @param categoryApplicationNames ordered application names per category
+     * @param descriptorLoadTime cumulated descriptor loading time (nanoseconds)
+     */
+    private void populateSequentially(final EnumMap<Category, List<String>> categoryApplicationNames, final AtomicLong descriptorLoadTime) {
+
+        for (Map.Entry<Category, List<String>> entry : categoryApplicationNames.entrySet()) {
+            final Category currentCategory = entry.getKey();
+
+            for (String applicationName : entry.getValue()) {
+                _logger.debug("Loading '{}' category's stub '{}' data from resource.", currentCategory.value(), applicationName);
+
+                final long start = System.nanoTime();
+                final StubDescriptor descriptor = _registryCache.getDescriptor(applicationName);
+                descriptorLoadTime.addAndGet(System.nanoTime() - start);
+
+                _descriptorMap.put(applicationName, descriptor);
+            }
+
+            _familyLists.put(currentCategory, entry.getValue());
+        }
+    }
+
+    /**
+     * Load stub descriptors using a bounded fork-join pool (application order is preserved in each category)
+     *
+     * @param categoryApplicationNames ordered application names per category
+     * @param descriptorLoadTime cumulated descriptor loading time (nanoseconds)
+     */
+    private void populateInParallel(final EnumMap<Category, List<String>> categoryApplicationNames, final AtomicLong descriptorLoadTime) {
+
+        final int parallelism = Math.max(1, Math.min(MAX_POPULATION_THREADS, Runtime.getRuntime().availableProcessors()));
+        _logger.debug("Loading stub descriptors using {} threads.", parallelism);
+
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            // Submit all descriptor loading tasks at once (in category then application order):
+            final EnumMap<Category, List<Future<StubDescriptor>>> categoryFutures = new EnumMap<Category, List<Future<StubDescriptor>>>(Category.class);
+
+            for (Map.Entry<Category, List<String>> entry : categoryApplicationNames.entrySet()) {
+                final Category currentCategory = entry.getKey();
+
+                final List<Future<StubDescriptor>> futures = new ArrayList<Future<StubDescriptor>>(entry.getValue().size());
+
+                for (final String applicationName : entry.getValue()) {
+                    futures.add(pool.submit(new Callable<StubDescriptor>() {
+                        /**
+                         * Load the stub descriptor using one pool thread
+                         */
+                        @Override
+                        public StubDescriptor call() {
+                            _logger.debug("Loading '{}' category's stub '{}' data from resource.", currentCategory.value(), applicationName);
+
+                            final long start = System.nanoTime();
+                            final StubDescriptor descriptor = _registryCache.getDescriptor(applicationName);
+                            descriptorLoadTime.addAndGet(System.nanoTime() - start);
+
+                            return descriptor;
+                        }
+                    }));
+                }
+                categoryFutures.put(currentCategory, futures);
+            }
+
+            // Collect results in submission order to keep the family lists deterministic:
+            for (Map.Entry<Category, List<Future<StubDescriptor>>> entry : categoryFutures.entrySet()) {
+                final Category currentCategory = entry.getKey();
+                final List<String> applicationNames = categoryApplicationNames.get(currentCategory);
+                final List<Future<StubDescriptor>> futures = entry.getValue();
+
+                for (int i = 0, len = futures.size(); i < len; i++) {
+                    _descriptorMap.put(applicationNames.get(i), futures.get(i).get());
+                }
+
+                _familyLists.put(currentCategory, applicationNames);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading stub descriptors.", ie);
+        } catch (ExecutionException ee) {
+            throw new IllegalStateException("Unable to load stub descriptors.", ee.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Return the client stub of the given application, creating it on first use (thread-safe)
      * 
      * @param applicationName application name
-     * @return client stub 
+     * @return client stub or null if the application is unknown (or not selected)
      */
-    private ClientStub createClientStub(final String applicationName) {
+    private ClientStub getOrCreateClientStub(final String applicationName) {
 
-        SampStub data = StubMetaData.retrieveSampStubForApplication(applicationName);
-
-        final ClientStub client = new ClientStub(data);
-        client.addObserver(new StubMonitor(applicationName));
+        ClientStub client = _clientStubMap.get(applicationName);
+        if (client == null) {
+            final StubDescriptor data = _descriptorMap.get(applicationName);
+            if (data == null) {
+                return null;
+            }
+            synchronized (_clientStubMap) {
+                client = _clientStubMap.get(applicationName);
+                if (client == null) {
+                    _logger.debug("Creating '{}' client stub.", applicationName);
 
-        _clientStubMap.put(applicationName, client);
+                    // AppLauncher stub: pending messages are spooled
+                    client = new ClientStub(data, true);
+                    client.addListener(new StubMonitor(applicationName));
 
+                    _clientStubMap.put(applicationName, client);
+                }
+            }
+        }
         return client;
     }
 
@@ -122,19 +259,44 @@ public final class HubPopulator {
     }
 
     /**
-     * Return the client stub map keyed by application name.
-     * @return client stub map keyed by application name
+     * Return the names of the known applications (registry order).
+     * @return application names
+     */
+    public static Set<String> getApplicationNames() {
+        return Collections.unmodifiableSet(start()._descriptorMap.keySet());
+    }
+
+    /**
+     * Return the stub descriptors keyed by application name (registry order).
+     * @return stub descriptors keyed by application name
+     */
+    public static Map<String, StubDescriptor> getDescriptorMap() {
+        return Collections.unmodifiableMap(start()._descriptorMap);
+    }
+
+    /**
+     * Return the live map of the client stubs created so far keyed by application name.
+     * @return created client stubs keyed by application name
      */
     public static Map<String, ClientStub> getClientStubMap() {
-        return start()._clientStubMap;
+        return Collections.unmodifiableMap(start()._clientStubMap);
     }
 
     /**
-     * Return the client stub given its name.
+     * Return the client stub given its name, creating it on first use.
      * @param name application name to match
      * @return client stub or null if not found
      */
     public static ClientStub retrieveClientStub(final String name) {
+        return start().getOrCreateClientStub(name);
+    }
+
+    /**
+     * Return the client stub given its name only if already created.
+     * @param name application name to match
+     * @return client stub or null if not found or not created yet
+     */
+    public static ClientStub getCreatedClientStub(final String name) {
         return start()._clientStubMap.get(name);
     }
 
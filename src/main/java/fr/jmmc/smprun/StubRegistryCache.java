@@ -0,0 +1,394 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun;
+
+import fr.jmmc.smprsc.data.RegistryManager;
+import fr.jmmc.smprsc.data.list.StubRegistry;
+import fr.jmmc.smprsc.data.list.model.Category;
+import fr.jmmc.smprsc.data.stub.StubMetaData;
+import fr.jmmc.smprsc.data.stub.model.Type;
+import fr.jmmc.smprun.stub.PrivateFiles;
+import fr.jmmc.smprun.stub.StubDescriptor;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Binary snapshot of the parsed stub registry (application names per category and stub descriptors).
+ *
+ * The snapshot is keyed by the registry version: it is read back on later starts and any missing or stale entry
+ * falls back to the XML registry (the snapshot is then written again). As it holds the JNLP URLs and command-line
+ * paths later launched, the snapshot is kept in the per-user private directory and ignored if not owned by the user.
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+public final class StubRegistryCache {
+
+    /** Class logger */
+    private static final Logger _logger = LoggerFactory.getLogger(StubRegistryCache.class.getName());
+    /** file magic number */
+    private static final int MAGIC = 0x534D5052; // 'SMPR'
+    /** file format version (increment whenever the layout changes) */
+    private static final int FORMAT_VERSION = 2;
+    /** cache directory name */
+    private static final String CACHE_DIR_NAME = "cache";
+    /** cache file name */
+    private static final String CACHE_FILE_NAME = "registry.cache";
+    /** string encoding */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /* members */
+    /** cache file (null if no private directory) */
+    private final File _file;
+    /** registry version key */
+    private final String _key;
+    /** application names per category */
+    private final EnumMap<Category, List<String>> _categoryApplicationNames = new EnumMap<Category, List<String>>(Category.class);
+    /** stub descriptors keyed by application name */
+    private final ConcurrentHashMap<String, StubDescriptor> _descriptors = new ConcurrentHashMap<String, StubDescriptor>(64);
+    /** true if the cache content differs from the cache file */
+    private volatile boolean _modified = false;
+
+    /**
+     * Load the registry cache (or fall back to the XML registry if missing or stale)
+     *
+     * @return registry cache
+     */
+    public static StubRegistryCache load() {
+        File file = null;
+        try {
+            file = new File(PrivateFiles.getDirectory(CACHE_DIR_NAME), CACHE_FILE_NAME);
+        } catch (IOException ioe) {
+            _logger.info("No private directory for the registry cache: using XML registry.", ioe);
+        }
+        final StubRegistryCache cache = new StubRegistryCache(file, computeRegistryKey());
+
+        final long start = System.nanoTime();
+        if (cache.read()) {
+            _logger.info("Loaded {} stub descriptors from registry cache '{}' in {} ms.",
+                    cache._descriptors.size(), cache._file, (System.nanoTime() - start) / 1000000L);
+        } else {
+            cache.clear();
+        }
+        return cache;
+    }
+
+    /**
+     * Package-private constructor
+     *
+     * @param file cache file (null if no private directory)
+     * @param key registry version key
+     */
+    StubRegistryCache(final File file, final String key) {
+        _file = file;
+        _key = key;
+    }
+
+    /**
+     * Compute the key identifying the current registry version
+     *
+     * @return registry version key
+     */
+    private static String computeRegistryKey() {
+        final StringBuilder sb = new StringBuilder(64);
+        sb.append(FORMAT_VERSION);
+        sb.append('|').append(RegistryManager.getInstance().getDescription().getProgramVersion());
+
+        // Also use the registry jar file (if any) to detect snapshot builds sharing the same version:
+        try {
+            final CodeSource codeSource = StubRegistry.class.getProtectionDomain().getCodeSource();
+            final URL location = (codeSource != null) ? codeSource.getLocation() : null;
+            if (location != null && "file".equals(location.getProtocol())) {
+                final File registryFile = new File(location.toURI());
+                sb.append('|').append(registryFile.length()).append('|').append(registryFile.lastModified());
+            }
+        } catch (Exception e) {
+            _logger.debug("Unable to locate the registry jar file:", e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Return the application names of the given category
+     *
+     * @param category category to look for
+     * @return application names
+     */
+    public List<String> getCategoryApplicationNames(final Category category) {
+        synchronized (_categoryApplicationNames) {
+            List<String> names = _categoryApplicationNames.get(category);
+            if (names == null) {
+                // Fall back to the XML registry:
+                names = putCategoryApplicationNames(category, StubRegistry.getCategoryApplicationNames(category));
+            }
+            return names;
+        }
+    }
+
+    /**
+     * Store the application names of the given category
+     *
+     * @param category category
+     * @param applicationNames application names
+     * @return stored (unmodifiable) application names
+     */
+    List<String> putCategoryApplicationNames(final Category category, final List<String> applicationNames) {
+        final List<String> names = Collections.unmodifiableList(new ArrayList<String>(applicationNames));
+        synchronized (_categoryApplicationNames) {
+            _categoryApplicationNames.put(category, names);
+        }
+        _modified = true;
+        return names;
+    }
+
+    /**
+     * Return the stub descriptor of the given application (thread-safe)
+     *
+     * @param applicationName application name
+     * @return stub descriptor
+     */
+    public StubDescriptor getDescriptor(final String applicationName) {
+        StubDescriptor descriptor = _descriptors.get(applicationName);
+        if (descriptor == null) {
+            // Fall back to the XML registry:
+            descriptor = StubDescriptor.fromSampStub(StubMetaData.retrieveSampStubForApplication(applicationName));
+            putDescriptor(applicationName, descriptor);
+        }
+        return descriptor;
+    }
+
+    /**
+     * Store the stub descriptor of the given application
+     *
+     * @param applicationName application name
+     * @param descriptor stub descriptor
+     */
+    void putDescriptor(final String applicationName, final StubDescriptor descriptor) {
+        _descriptors.put(applicationName, descriptor);
+        _modified = true;
+    }
+
+    /**
+     * Write the cache file if its content changed since loaded
+     */
+    public void saveIfModified() {
+        if (!_modified || _file == null) {
+            return;
+        }
+        _modified = false;
+
+        final File tmpFile = new File(_file.getParentFile(), _file.getName() + ".tmp");
+        try {
+            write(tmpFile);
+
+            // Replace the previous snapshot (if any):
+            PrivateFiles.replace(tmpFile, _file);
+            _logger.info("Saved {} stub descriptors into registry cache '{}'.", _descriptors.size(), _file);
+        } catch (IOException ioe) {
+            _logger.info("Unable to write the registry cache '{}':", tmpFile, ioe);
+        } finally {
+            if (tmpFile.exists() && !tmpFile.delete()) {
+                _logger.debug("Unable to delete the temporary registry cache '{}'.", tmpFile);
+            }
+        }
+    }
+
+    /**
+     * Discard any loaded content
+     */
+    private void clear() {
+        synchronized (_categoryApplicationNames) {
+            _categoryApplicationNames.clear();
+        }
+        _descriptors.clear();
+    }
+
+    /**
+     * Read the cache file into a heap buffer (no file mapping left open so that the file can be replaced later)
+     *
+     * @return true if the cache file was read, false if missing, stale or invalid
+     */
+    boolean read() {
+        if (_file == null || !_file.isFile()) {
+            _logger.debug("No registry cache '{}'.", _file);
+            return false;
+        }
+        if (!PrivateFiles.isPrivateFile(_file)) {
+            _logger.warn("Ignoring registry cache '{}' (not a regular file owned by the user).", _file);
+            return false;
+        }
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(_file.toPath()));
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                _logger.info("Invalid registry cache '{}': using XML registry.", _file);
+                return false;
+            }
+            final String key = readString(buffer);
+            if (!_key.equals(key)) {
+                _logger.info("Stale registry cache '{}' [{}] (registry is [{}]): using XML registry.", _file, key, _key);
+                return false;
+            }
+
+            synchronized (_categoryApplicationNames) {
+                for (int i = 0, nCategories = buffer.getInt(); i < nCategories; i++) {
+                    final Category category = Category.valueOf(readString(buffer));
+                    final int nNames = buffer.getInt();
+                    final List<String> names = new ArrayList<String>(nNames);
+                    for (int j = 0; j < nNames; j++) {
+                        names.add(readString(buffer));
+                    }
+                    _categoryApplicationNames.put(category, Collections.unmodifiableList(names));
+                }
+            }
+
+            for (int i = 0, nDescriptors = buffer.getInt(); i < nDescriptors; i++) {
+                final String applicationName = readString(buffer);
+                final String typeName = readString(buffer);
+                final Type type = (typeName == null) ? null : Type.valueOf(typeName);
+                final long lag = buffer.getLong();
+
+                final int nMetadata = buffer.getInt();
+                final Map<String, String> metadata = new LinkedHashMap<String, String>(nMetadata);
+                for (int j = 0; j < nMetadata; j++) {
+                    metadata.put(readString(buffer), readString(buffer));
+                }
+
+                final int nSubscriptions = buffer.getInt();
+                final List<String> subscriptions = new ArrayList<String>(nSubscriptions);
+                for (int j = 0; j < nSubscriptions; j++) {
+                    subscriptions.add(readString(buffer));
+                }
+
+                _descriptors.put(applicationName, new StubDescriptor(metadata, subscriptions, lag, type));
+            }
+            return true;
+        } catch (IOException ioe) {
+            _logger.info("Unable to read the registry cache '{}': using XML registry.", _file, ioe);
+        } catch (BufferUnderflowException bue) {
+            _logger.info("Truncated registry cache '{}': using XML registry.", _file);
+        } catch (IllegalArgumentException iae) {
+            _logger.info("Invalid registry cache '{}': using XML registry.", _file, iae);
+        }
+        return false;
+    }
+
+    /**
+     * Write the cache content into the given file
+     *
+     * @param file file to write
+     * @throws IOException if an I/O error occurred
+     */
+    private void write(final File file) throws IOException {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(PrivateFiles.newOutputStream(file, false), 16 * 1024));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            writeString(out, _key);
+
+            synchronized (_categoryApplicationNames) {
+                out.writeInt(_categoryApplicationNames.size());
+                for (Map.Entry<Category, List<String>> entry : _categoryApplicationNames.entrySet()) {
+                    writeString(out, entry.getKey().name());
+                    out.writeInt(entry.getValue().size());
+                    for (String name : entry.getValue()) {
+                        writeString(out, name);
+                    }
+                }
+            }
+
+            // Take a snapshot as descriptors may be added concurrently:
+            final Map<String, StubDescriptor> descriptors = new LinkedHashMap<String, StubDescriptor>(_descriptors);
+
+            out.writeInt(descriptors.size());
+            for (Map.Entry<String, StubDescriptor> entry : descriptors.entrySet()) {
+                final StubDescriptor descriptor = entry.getValue();
+
+                writeString(out, entry.getKey());
+                writeString(out, (descriptor.getType() == null) ? null : descriptor.getType().name());
+                out.writeLong(descriptor.getLag());
+
+                out.writeInt(descriptor.getMetadata().size());
+                for (Map.Entry<String, String> md : descriptor.getMetadata().entrySet()) {
+                    writeString(out, md.getKey());
+                    writeString(out, md.getValue());
+                }
+
+                out.writeInt(descriptor.getSubscriptions().size());
+                for (String subscription : descriptor.getSubscriptions()) {
+                    writeString(out, subscription);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Write the given string (length-prefixed UTF-8 bytes, null written as length -1)
+     *
+     * @param out output stream
+     * @param value string to write (may be null)
+     * @throws IOException if an I/O error occurred
+     */
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read one string (length-prefixed UTF-8 bytes)
+     *
+     * @param buffer buffer to read
+     * @return string (may be null)
+     */
+    private static String readString(final ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
@@ -33,7 +33,32 @@ public enum PreferenceKey {
     DISCARD_BROADCASTS_FLAG("discard.broadcasts.flag"),
     APPLICATION_CLI_PATH_PREFIX("command.line.path.for."),
     SELECTED_APPLICATION_LIST("selected.application.list"),
-    BETA_APPLICATION_LIST("beta.application.list");
+    BETA_APPLICATION_LIST("beta.application.list"),
+    PARALLEL_STUB_POPULATION("parallel.stub.population"),
+    HUB_EVENT_QUIET_DELAY("hub.event.quiet.delay"),
+    HUB_EVENT_MAX_LATENCY("hub.event.max.latency"),
+    APPLICATION_LAUNCH_LAG_PREFIX("launch.lag.for."),
+    APPLICATION_READY_LAG_PREFIX("ready.lag.for."),
+    MESSAGE_QUEUE_CAPACITY("message.queue.capacity"),
+    MESSAGE_QUEUE_OVERFLOW_POLICY("message.queue.overflow.policy"),
+    MESSAGE_DEDUP_WINDOW("message.dedup.window"),
+    MESSAGE_DEFAULT_TTL("message.default.ttl"),
+    MESSAGE_TTL_PREFIX("message.ttl.for."),
+    FORWARD_CALL_AND_TRACK("forward.call.and.track"),
+    FORWARD_MAX_RETRIES("forward.max.retries"),
+    PAYLOAD_PREFETCH("payload.prefetch"),
+    PAYLOAD_CACHE_MAX_SIZE("payload.cache.max.size"),
+    MESSAGE_SPILL_THRESHOLD("message.spill.threshold"),
+    LAUNCH_MAX_CONCURRENT("launch.max.concurrent"),
+    LAUNCH_MEMORY_PER_APPLICATION("launch.memory.per.application"),
+    WARM_APPLICATION_LIST("warm.application.list"),
+    WARM_POOL_MAX_MEMORY("warm.pool.max.memory"),
+    WARM_POOL_IDLE_TIMEOUT("warm.pool.idle.timeout"),
+    WARM_POOL_START_DELAY("warm.pool.start.delay"),
+    SPECULATIVE_LAUNCH("speculative.launch"),
+    SPECULATIVE_LAUNCH_THRESHOLD("speculative.launch.threshold"),
+    SPECULATIVE_LAUNCH_BUDGET("speculative.launch.budget"),
+    SPECULATIVE_LAUNCH_TIMEOUT("speculative.launch.timeout");
     /** the preferenced value identifying token */
     private final String _key;
 
@@ -94,6 +94,38 @@ public class Preferences extends fr.jmmc.jmcs.data.preference.Preferences {
         setDefaultPreference(PreferenceKey.BETA_APPLICATION_LIST, new ArrayList<String>());
         // By default do not skip broadcasted messages
         setDefaultPreference(PreferenceKey.DISCARD_BROADCASTS_FLAG, false);
+        // By default create stubs in parallel at startup
+        setDefaultPreference(PreferenceKey.PARALLEL_STUB_POPULATION, true);
+        // By default process hub events after 100 ms without new event (but no later than 500 ms after the first one)
+        setDefaultPreference(PreferenceKey.HUB_EVENT_QUIET_DELAY, 100);
+        setDefaultPreference(PreferenceKey.HUB_EVENT_MAX_LATENCY, 500);
+        // By default keep at most 16 pending messages per application (dropping the oldest ones)
+        setDefaultPreference(PreferenceKey.MESSAGE_QUEUE_CAPACITY, 16);
+        setDefaultPreference(PreferenceKey.MESSAGE_QUEUE_OVERFLOW_POLICY, "DROP_OLDEST");
+        // By default discard identical messages received within 30 s and expire pending messages after 10 minutes
+        setDefaultPreference(PreferenceKey.MESSAGE_DEDUP_WINDOW, 30000);
+        setDefaultPreference(PreferenceKey.MESSAGE_DEFAULT_TTL, 600000);
+        // By default forward messages using notifications (call-and-track mode retries transient failures twice)
+        setDefaultPreference(PreferenceKey.FORWARD_CALL_AND_TRACK, false);
+        setDefaultPreference(PreferenceKey.FORWARD_MAX_RETRIES, 2);
+        // By default do not prefetch message payloads (cache limited to 256 MB when enabled)
+        setDefaultPreference(PreferenceKey.PAYLOAD_PREFETCH, false);
+        setDefaultPreference(PreferenceKey.PAYLOAD_CACHE_MAX_SIZE, 256);
+        // By default keep pending message parameters in memory (spill threshold in KB, 0 to disable)
+        setDefaultPreference(PreferenceKey.MESSAGE_SPILL_THRESHOLD, 0);
+        // By default cap concurrent launches automatically (half the cores, 512 MB of free memory per application)
+        setDefaultPreference(PreferenceKey.LAUNCH_MAX_CONCURRENT, 0);
+        setDefaultPreference(PreferenceKey.LAUNCH_MEMORY_PER_APPLICATION, 512);
+        // By default no warm standby application (pool limited to 2 GB, idle instances evicted after 30 minutes)
+        setDefaultPreference(PreferenceKey.WARM_APPLICATION_LIST, new ArrayList<String>());
+        setDefaultPreference(PreferenceKey.WARM_POOL_MAX_MEMORY, 2048);
+        setDefaultPreference(PreferenceKey.WARM_POOL_IDLE_TIMEOUT, 30);
+        setDefaultPreference(PreferenceKey.WARM_POOL_START_DELAY, 30);
+        // By default no speculative launch (when enabled: 70% confidence, 1 launch at a time, cancelled after 10 minutes)
+        setDefaultPreference(PreferenceKey.SPECULATIVE_LAUNCH, false);
+        setDefaultPreference(PreferenceKey.SPECULATIVE_LAUNCH_THRESHOLD, 70);
+        setDefaultPreference(PreferenceKey.SPECULATIVE_LAUNCH_BUDGET, 1);
+        setDefaultPreference(PreferenceKey.SPECULATIVE_LAUNCH_TIMEOUT, 10);
     }
 
     public List<String> getSelectedApplicationNames() {
@@ -124,6 +156,11 @@ public class Preferences extends fr.jmmc.jmcs.data.preference.Preferences {
         return false;
     }
 
+    public List<String> getWarmApplicationNames() {
+
+        return getStringListPreference(PreferenceKey.WARM_APPLICATION_LIST);
+    }
+
     public boolean isApplicationReleaseBeta(String applicationName) {
 
         List<String> betaApplicationNameList = ALL_APPLICATIONS_SELECTED;
@@ -155,6 +192,57 @@ public class Preferences extends fr.jmmc.jmcs.data.preference.Preferences {
         }
     }
 
+    /**
+     * Return the learned startup lag of the given application
+     * @param lagPrefix APPLICATION_LAUNCH_LAG_PREFIX or APPLICATION_READY_LAG_PREFIX
+     * @param applicationName application name
+     * @return learned lag in milliseconds or -1 if unknown
+     */
+    public long getApplicationLag(PreferenceKey lagPrefix, String applicationName) {
+        final String applicationId = FileUtils.cleanupFileName(applicationName);
+        final String lag = getPreference(lagPrefix + applicationId, true); // Does not thrown exception on missing value
+        if (lag != null) {
+            try {
+                return Long.parseLong(lag.trim());
+            } catch (NumberFormatException nfe) {
+                _logger.warn("Invalid '{}' lag for application '{}' : '{}'.", lagPrefix, applicationName, lag);
+            }
+        }
+        return -1L;
+    }
+
+    /**
+     * Define the learned startup lag of the given application
+     * @param lagPrefix APPLICATION_LAUNCH_LAG_PREFIX or APPLICATION_READY_LAG_PREFIX
+     * @param applicationName application name
+     * @param lag learned lag in milliseconds
+     */
+    public void setApplicationLag(PreferenceKey lagPrefix, String applicationName, long lag) {
+        final String applicationId = FileUtils.cleanupFileName(applicationName);
+        try {
+            setPreference(lagPrefix + applicationId, Long.toString(lag));
+        } catch (PreferencesException ex) {
+            _logger.error("Could not set '{}' application '{}' lag to '{}' : ", applicationName, lagPrefix, lag, ex);
+        }
+    }
+
+    /**
+     * Return the time-to-live of pending messages having the given mType
+     * @param mType message type
+     * @return time-to-live in milliseconds (0 means no expiry)
+     */
+    public long getMessageTimeToLive(String mType) {
+        final String ttl = getPreference(PreferenceKey.MESSAGE_TTL_PREFIX + mType, true); // Does not thrown exception on missing value
+        if (ttl != null) {
+            try {
+                return Long.parseLong(ttl.trim());
+            } catch (NumberFormatException nfe) {
+                _logger.warn("Invalid time-to-live for mType '{}' : '{}'.", mType, ttl);
+            }
+        }
+        return getPreferenceAsInt(PreferenceKey.MESSAGE_DEFAULT_TTL);
+    }
+
     public static void main(String[] args) {
 
         final Preferences prefs = Preferences.getInstance();
@@ -23,14 +23,13 @@ import fr.jmmc.jmcs.data.preference.PreferencesException;
 import fr.jmmc.jmcs.gui.component.DismissableMessagePane;
 import fr.jmmc.jmcs.gui.component.MessagePane;
 import fr.jmmc.jmcs.gui.component.StatusBar;
+import fr.jmmc.jmcs.gui.util.SwingUtils;
 import fr.jmmc.jmcs.network.interop.SampCapability;
 import fr.jmmc.jmcs.network.interop.SampManager;
 import fr.jmmc.jmcs.network.interop.SampMetaData;
 import fr.jmmc.jmcs.service.BrowserLauncher;
 import fr.jmmc.jmcs.service.JnlpStarter;
 import fr.jmmc.jmcs.util.CommandLineUtils;
-import fr.jmmc.jmcs.util.StringUtils;
-import fr.jmmc.jmcs.util.concurrent.ThreadExecutors;
 import fr.jmmc.jmcs.util.runner.JobListener;
 import fr.jmmc.jmcs.util.runner.LocalLauncher;
 import fr.jmmc.jmcs.util.runner.RootContext;
@@ -41,13 +40,30 @@ import fr.jmmc.smprsc.data.stub.StubMetaData;
 import fr.jmmc.smprsc.data.stub.model.SampStub;
 import fr.jmmc.smprsc.data.stub.model.Type;
 import fr.jmmc.smprun.DockWindow;
+import fr.jmmc.smprun.HubMonitor;
 import fr.jmmc.smprun.preference.PreferenceKey;
 import fr.jmmc.smprun.preference.Preferences;
+import java.io.File;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 import javax.swing.ImageIcon;
+import org.astrogrid.samp.Client;
 import org.astrogrid.samp.Message;
 import org.astrogrid.samp.Metadata;
+import org.astrogrid.samp.Response;
 import org.astrogrid.samp.Subscriptions;
 import org.astrogrid.samp.client.*;
 import org.slf4j.Logger;
@@ -58,10 +74,38 @@ import org.slf4j.LoggerFactory;
  *
  * @author Sylvain LAFRASSE, Laurent BOURGES
  */
-public final class ClientStub extends Observable implements JobListener {
+public final class ClientStub implements JobListener {
 
     /** Class logger */
     private static final Logger _logger = LoggerFactory.getLogger(ClientStub.class.getName());
+    /** SAMP ping mType used to probe the real recipient readiness */
+    private static final String PING_MTYPE = "samp.app.ping";
+    /** initial delay in milliseconds between two readiness probes */
+    private static final long PROBE_INITIAL_DELAY = 100L;
+    /** maximum delay in milliseconds between two readiness probes */
+    private static final long PROBE_MAX_DELAY = 2000L;
+    /** maximum time in seconds to wait for a ping response */
+    private static final int PROBE_PING_TIMEOUT = 2;
+    /** safety factor applied to learned lags to get deadlines / timeouts */
+    private static final long LAG_SAFETY_FACTOR = 3L;
+    /** minimum readiness deadline in milliseconds when using the learned ready lag */
+    private static final long MIN_READY_DEADLINE = 2000L;
+    /** maximum time in seconds to wait for a response in call-and-track mode */
+    private static final int FORWARD_CALL_TIMEOUT = 60;
+    /** delay in milliseconds before retrying a failed call (multiplied by the attempt number) */
+    private static final long FORWARD_RETRY_DELAY = 500L;
+    /** shared scheduler running the forward pipeline steps (readiness probes and forwards) of all stubs */
+    private static final ScheduledExecutorService _forwardScheduler = Executors.newScheduledThreadPool(2, new ThreadFactory() {
+        /** thread counter */
+        private final AtomicInteger _count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, ClientStub.class.getSimpleName() + "Forwarder-" + _count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
     /** AppLauncher shared preferences */
     private final Preferences _preferences;
     /* members : app meta data object */
@@ -78,7 +122,8 @@ public final class ClientStub extends Observable implements JobListener {
      */
     private final SampCapability[] _mTypes;
     /**
-     * sleep delay in milliseconds before sending the SAMP message (application startup workaround)
+     * maximum delay in milliseconds to wait for the real recipient readiness before sending the SAMP message
+     * (application startup workaround)
      */
     private final long _sleepDelayBeforeNotify;
     /**
@@ -89,52 +134,109 @@ public final class ClientStub extends Observable implements JobListener {
      * log prefix
      */
     private final String _logPrefix;
+    /**
+     * asynchronous state change notifications
+     */
+    private final ClientStubEventBus _eventBus;
     /* state objects */
     /**
-     * internal lock object for synchronization
+     * client stub state (transitions validated by ClientStubState.canMoveTo)
+     */
+    private final AtomicReference<ClientStubState> _state = new AtomicReference<ClientStubState>(ClientStubState.UNDEFINED);
+    /**
+     * time (epoch milliseconds) of the last transition to each state (indexed by state ordinal)
+     */
+    private final AtomicLongArray _stateTimes = new AtomicLongArray(ClientStubState.values().length);
+    /**
+     * completed once this stub listens to SAMP messages (renewed on each connection)
      */
-    private final Object _lock = new Object();
+    private volatile CompletableFuture<ClientStub> _listeningFuture = new CompletableFuture<ClientStub>();
     /**
-     * client stub state
+     * completed once this stub has forwarded its messages and is done (renewed on each connection)
      */
-    private ClientStubState _status;
+    private volatile CompletableFuture<ClientStub> _successFuture = new CompletableFuture<ClientStub>();
+    /**
+     * launch in flight (single-flight): completed once the real application is detected, failed or timed out
+     */
+    private final AtomicReference<CompletableFuture<ClientStub>> _launchFlight = new AtomicReference<CompletableFuture<ClientStub>>();
+    /** recipient identifier of the real application being forwarded messages */
+    private volatile String _forwardRecipientId = null;
+    /** real recipient subscriptions (null if unknown) */
+    private volatile Subscriptions _forwardSubscriptions = null;
+    /** forward passes and tracked calls in progress (-1 once forwarding ended) */
+    private final AtomicInteger _forwardCalls = new AtomicInteger(-1);
+    /** lock to forward messages in order */
+    private final Object _forwardLock = new Object();
+    /**
+     * launch time (nano time) of the real application or 0 if not launched by this stub
+     */
+    private volatile long _launchTime = 0L;
     /**
      * job context identifier representing the executed application to be able to kill / cancel its execution
      */
     private volatile Long _jobContextId = null;
+    /**
+     * true while the real application is a standby instance (warm pool or speculative launch)
+     * not yet claimed by any message or user action nor registered on the hub
+     */
+    private final AtomicBoolean _standby = new AtomicBoolean(false);
+    /** lock to serialize standby claims and cancellations */
+    private final Object _standbyLock = new Object();
+    /**
+     * time (nano time) of the last launch request (message or user action) or 0 if never requested
+     */
+    private volatile long _requestTime = 0L;
     /**
      * Messages queued, to forward once recipient appeared
      */
-    private volatile Queue<Message> _messages = new LinkedList<Message>();
+    private final MessageQueue _messages;
+    /**
+     * Crash-safe copy of the pending messages (disabled for stubs not owned by AppLauncher)
+     */
+    private final MessageSpool _spool;
+    /**
+     * Message counters
+     */
+    private final StubMetrics _metrics = new StubMetrics();
     /* SAMP objects */
     /**
-     * Hub connector
+     * Hub connector (lazily created on first connection)
      */
-    private final HubConnector _connector;
+    private volatile HubConnector _connector = null;
     /**
      * Potential message handler
      */
     private AbstractMessageHandler[] _mHandlers = null;
 
     /**
-     * Constructor.
+     * Constructor (message spool disabled).
      *
      * @param data XML values
      */
     public ClientStub(final SampStub data) {
+        this(StubDescriptor.fromSampStub(data), false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param data parsed application description
+     * @param spooled true to restore and spool pending messages using the per-user message spool of the application
+     * (AppLauncher stubs only: other stubs must not touch the messages spooled by AppLauncher)
+     */
+    public ClientStub(final StubDescriptor data, final boolean spooled) {
 
         _preferences = Preferences.getInstance();
 
-        // Retrieve each serialized SAMP meta data (remove accent to be samp compliant)
+        // Retrieve each serialized SAMP meta data (accents already removed to be samp compliant)
         _description = new Metadata();
-        for (fr.jmmc.smprsc.data.stub.model.Metadata metadata : data.getMetadatas()) {
-            _description.put(metadata.getKey(), StringUtils.removeAccents(metadata.getValue()));
-        }
+        _description.putAll(data.getMetadata());
 
         // Retrieve real application name, JNLP URL and startup delay
         _applicationName = _description.getName();
         _logPrefix = "Stub['" + _applicationName + "'] : ";
-        _sleepDelayBeforeNotify = data.getLag().intValue();
+        _eventBus = new ClientStubEventBus(_applicationName);
+        _sleepDelayBeforeNotify = data.getLag();
         _executionType = data.getType();
 
         // Add a custom flag to all our created STUB for later skipping while looking for real recipients
@@ -164,11 +266,34 @@ public final class ClientStub extends Observable implements JobListener {
         }
         _mTypes = capabilityList.toArray(new SampCapability[0]);
 
-        setState(ClientStubState.UNDEFINED);
+        // Pending messages (expiry per mType):
+        final Map<String, Long> ttlByMType = new HashMap<String, Long>(8);
+        for (SampCapability capability : _mTypes) {
+            ttlByMType.put(capability.mType(), Long.valueOf(_preferences.getMessageTimeToLive(capability.mType())));
+        }
+        _messages = new MessageQueue(_preferences.getPreferenceAsInt(PreferenceKey.MESSAGE_QUEUE_CAPACITY),
+                MessageQueue.OverflowPolicy.parse(_preferences.getPreference(PreferenceKey.MESSAGE_QUEUE_OVERFLOW_POLICY, true),
+                        MessageQueue.OverflowPolicy.DROP_OLDEST),
+                _preferences.getPreferenceAsInt(PreferenceKey.MESSAGE_DEDUP_WINDOW),
+                ttlByMType, _preferences.getPreferenceAsInt(PreferenceKey.MESSAGE_DEFAULT_TTL),
+                1024L * _preferences.getPreferenceAsInt(PreferenceKey.MESSAGE_SPILL_THRESHOLD), _metrics);
+
+        // Restore messages not delivered before the last exit (or crash), dropping expired ones:
+        _spool = spooled ? new MessageSpool(_applicationName) : new MessageSpool((File) null);
+        final List<MessageSpool.Record> restored = _spool.load();
+        if (!restored.isEmpty()) {
+            for (MessageSpool.Record record : restored) {
+                _messages.offer(record.getMessage(), record.getReceiveTime());
+            }
+            final List<MessageSpool.Record> remaining = _messages.records();
+            if (remaining.size() != restored.size()) {
+                _spool.compact(remaining);
+            }
+        }
 
-        // Get a hook on the SAMP machinery
-        final ClientProfile profile = DefaultClientProfile.getProfile();
-        _connector = new HubConnector(profile);
+        _stateTimes.set(ClientStubState.UNDEFINED.ordinal(), System.currentTimeMillis());
+
+        // Note: the hub connector is only created when this stub must connect to the hub (see connectToHub)
     }
 
     /**
@@ -236,19 +361,13 @@ public final class ClientStub extends Observable implements JobListener {
     }
 
     /**
-     * @return the command-line application path, null otherwise.
+     * @return the command-line application path, asking the user for it if unknown, null otherwise.
      */
     public String getApplicationCliPath() {
 
-        final String preferedCliPath = _preferences.getApplicationCliPath(_applicationName);
-        if ((preferedCliPath != null) && (preferedCliPath.length() > 0)) {
-            return preferedCliPath;
-        }
-
-        SampMetaData sampCliPathId = SampMetaData.CLI_PATH;
-        final String defaultCliPath = _description.getString(sampCliPathId.id());
-        if ((defaultCliPath != null) && (defaultCliPath.length() > 0)) {
-            return defaultCliPath;
+        final String knownCliPath = getKnownApplicationCliPath();
+        if (knownCliPath != null) {
+            return knownCliPath;
         }
 
         // Ask user for CLI path in a pop up
@@ -256,7 +375,15 @@ public final class ClientStub extends Observable implements JobListener {
         final String message = "AppLauncher tries to start the '" + _applicationName + "' native application.\n"
                 + "As it is a user-installed application, AppLauncher does not know where to find it.\n\n"
                 + "Please enter a straight command-line to launch it (arguments not supported) :";
-        final String userCliPath = MessagePane.showInputMessage(message, title);
+        final String[] userInput = new String[1];
+        // note: invokeAndWaitEDT runs the dialog directly when called from the EDT
+        SwingUtils.invokeAndWaitEDT(new Runnable() {
+            @Override
+            public void run() {
+                userInput[0] = MessagePane.showInputMessage(message, title);
+            }
+        });
+        final String userCliPath = userInput[0];
         if ((userCliPath != null) && (userCliPath.length() > 0)) { // User did not canceled the input
             _preferences.setApplicationCliPath(_applicationName, userCliPath);
             try {
@@ -270,6 +397,24 @@ public final class ClientStub extends Observable implements JobListener {
         return null;
     }
 
+    /**
+     * @return the command-line application path from preferences or SAMP meta data, null otherwise.
+     */
+    private String getKnownApplicationCliPath() {
+
+        final String preferedCliPath = _preferences.getApplicationCliPath(_applicationName);
+        if ((preferedCliPath != null) && (preferedCliPath.length() > 0)) {
+            return preferedCliPath;
+        }
+
+        SampMetaData sampCliPathId = SampMetaData.CLI_PATH;
+        final String defaultCliPath = _description.getString(sampCliPathId.id());
+        if ((defaultCliPath != null) && (defaultCliPath.length() > 0)) {
+            return defaultCliPath;
+        }
+        return null;
+    }
+
     /**
      * @return the SAMP capabilities
      */
@@ -300,171 +445,441 @@ public final class ClientStub extends Observable implements JobListener {
     }
 
     /**
-     * Reset job context...
+     * Return true while the real application is a standby instance not yet claimed
+     *
+     * @return true while the real application is a standby instance not yet claimed
      */
-    private void resetMessageQueue() {
-        _messages.clear();
+    boolean isStandby() {
+        return _standby.get();
     }
 
     /**
-     * Return the internal state
+     * Define whether the real application is launched as a standby instance (warm pool or speculative launch)
      *
-     * @return internal state
+     * @param standby true to launch the real application as a standby instance
      */
-    private ClientStubState getState() {
-        synchronized (_lock) {
-            return _status;
+    void setStandby(final boolean standby) {
+        _standby.set(standby);
+    }
+
+    /**
+     * Return the time of the last launch request (message or user action)
+     *
+     * @return time in nanoseconds (nano time) or 0 if never requested
+     */
+    long getRequestTime() {
+        return _requestTime;
+    }
+
+    /**
+     * Cancel the launch of the standby instance unless it was claimed or the real application registered on the hub:
+     * a queued launch is withdrawn and a launching JNLP process is killed silently (no failure report, pending messages
+     * kept). Instances without process context (command-line or javaws already exited) can not be killed and are left
+     * running as a plain pre-launch.
+     *
+     * @return true if the launch was cancelled, false if claimed, registered, left running or starting (retry later)
+     */
+    boolean cancelStandbyLaunch() {
+        synchronized (_standbyLock) {
+            // only one of the claim and the cancellation wins the standby instance:
+            if (!_standby.compareAndSet(true, false)) {
+                return false;
+            }
+            final LaunchScheduler scheduler = LaunchScheduler.getInstance();
+            if (scheduler.withdraw(this)) {
+                _logger.info("{}Standby launch withdrawn.", _logPrefix);
+                return true;
+            }
+            final ClientStubState state = _state.get();
+            if (state == ClientStubState.LISTENING && scheduler.isRunning(this)) {
+                // launch starting: retry later (claims wait for this lock)
+                _standby.set(true);
+                return false;
+            }
+            final Long jobContextId = _jobContextId;
+            if (state != ClientStubState.LAUNCHING || jobContextId == null
+                    || HubMonitor.isRealApplicationRegistered(_applicationName)
+                    || !moveState(ClientStubState.LAUNCHING, ClientStubState.LISTENING)) {
+                _logger.info("{}Standby instance can not be cancelled (state = {}): left running.", _logPrefix, state);
+                return false;
+            }
+            _logger.info("{}Cancelling standby launch (job {}) ...", _logPrefix, jobContextId);
+
+            setJobContextId(null);
+            _launchTime = 0L;
+            LocalLauncher.cancelOrKillJob(jobContextId);
+
+            completeLaunchFlight(new IllegalStateException("Standby launch cancelled"));
+            scheduler.release(this);
         }
+        setClientButtonEnabled(true);
+        return true;
     }
 
     /**
-     * Update stub internal state progression and notifies observers
+     * @return message counters
+     */
+    public StubMetrics getMetrics() {
+        return _metrics;
+    }
+
+    /**
+     * Register the given listener to be notified asynchronously of state changes
      *
-     * @param status the current state
+     * @param listener listener to register
      */
-    private void setState(final ClientStubState status) {
-        // update status
-        _status = status;
+    public void addListener(final ClientStubListener listener) {
+        _eventBus.addListener(listener);
+    }
 
-        setChanged();
-        notifyObservers(_status);
+    /**
+     * Unregister the given listener
+     *
+     * @param listener listener to unregister
+     */
+    public void removeListener(final ClientStubListener listener) {
+        _eventBus.removeListener(listener);
     }
 
     /**
-     * Perform initialization (connect to hub, register MTypes ...)
+     * Return the internal state
+     *
+     * @return internal state
      */
-    public void connect() {
+    public ClientStubState getState() {
+        return _state.get();
+    }
+
+    /**
+     * Return the time of the last transition to the given state
+     *
+     * @param state state to get the time of
+     * @return time in epoch milliseconds or 0 if this stub never reached the given state
+     */
+    public long getStateTime(final ClientStubState state) {
+        return _stateTimes.get(state.ordinal());
+    }
 
-        // Reentrance / concurrency checks
-        synchronized (_lock) {
-            if (_status == ClientStubState.UNDEFINED || _status == ClientStubState.DIYING) {
-                setState(ClientStubState.INITIALIZING);
+    /**
+     * Atomically move from the given expected state to the given state, update progression and notify listeners
+     *
+     * @param expected expected current state
+     * @param status the next state
+     * @return true if the transition was performed, false if the current state differs or the transition is illegal
+     */
+    private boolean moveState(final ClientStubState expected, final ClientStubState status) {
+        if (!expected.canMoveTo(status)) {
+            _logger.warn("{}Illegal state transition: {} -> {}", _logPrefix, expected, status);
+            return false;
+        }
+        if (!_state.compareAndSet(expected, status)) {
+            return false;
+        }
+        _stateTimes.set(status.ordinal(), System.currentTimeMillis());
 
-                // If the client is a web app (no SAMP capability at all)
-                if (_mTypes.length <= 0) {
-                    _logger.info("{}Web application ready.", _logPrefix);
-                    return; // Skip SAMP stub connection
+        switch (status) {
+            case INITIALIZING:
+                // New connection: renew completed futures
+                if (_listeningFuture.isDone()) {
+                    _listeningFuture = new CompletableFuture<ClientStub>();
                 }
-
-                // Try to connect
-                if (!connectToHub()) {
-                    disconnect();
+                if (_successFuture.isDone()) {
+                    _successFuture = new CompletableFuture<ClientStub>();
                 }
+                break;
+            case LISTENING:
+                _listeningFuture.complete(this);
+                break;
+            case DIYING:
+                _successFuture.complete(this);
+                break;
+            default:
+        }
+
+        // Notify listeners asynchronously:
+        _eventBus.publish(this, status);
+        return true;
+    }
+
+    /**
+     * Atomically move from the current state to the given state if that transition is allowed
+     *
+     * @param status the next state
+     * @return true if the transition was performed, false if the transition is illegal from the current state
+     */
+    private boolean moveState(final ClientStubState status) {
+        while (true) {
+            final ClientStubState current = _state.get();
+            if (!current.canMoveTo(status)) {
+                _logger.debug("{}Rejected state transition: {} -> {}", _logPrefix, current, status);
+                return false;
+            }
+            if (moveState(current, status)) {
+                return true;
             }
         }
     }
 
     /**
-     * @return true only if this client stub is really connected to the hub, false otherwise
+     * Perform initialization (connect to hub, register MTypes ...)
      */
-    public boolean isConnected() {
+    public void connect() {
 
-        boolean connected = false;
+        // Reentrance / concurrency checks: only one caller can initialize this stub
+        if (moveState(ClientStubState.UNDEFINED, ClientStubState.INITIALIZING)
+                || moveState(ClientStubState.DIYING, ClientStubState.INITIALIZING)) {
 
-        // Reentrance / concurrency checks
-        synchronized (_lock) {
             // If the client is a web app (no SAMP capability at all)
             if (_mTypes.length <= 0) {
-                connected = true; // Always fake it is connected
-            } else if (_status.after(ClientStubState.INITIALIZING) && _status.before(ClientStubState.DISCONNECTING)) {
-                connected = _connector.isConnected();
+                _logger.info("{}Web application ready.", _logPrefix);
+                return; // Skip SAMP stub connection
+            }
+
+            // Try to connect
+            if (!connectToHub()) {
+                disconnect();
             }
         }
-        return connected;
+    }
+
+    /**
+     * @return true only if this client stub is really connected to the hub, false otherwise
+     */
+    public boolean isConnected() {
+        // If the client is a web app (no SAMP capability at all)
+        if (_mTypes.length <= 0) {
+            return true; // Always fake it is connected
+        }
+        final ClientStubState state = _state.get();
+        final HubConnector connector = _connector;
+
+        return connector != null && state.after(ClientStubState.INITIALIZING) && state.before(ClientStubState.DISCONNECTING)
+                && connector.isConnected();
     }
 
     /**
      * Disconnect from hub
      */
     public void disconnect() {
-        // Reentrance / concurrency checks
-        synchronized (_lock) {
-            if (_status.after(ClientStubState.INITIALIZING) && _status.before(ClientStubState.DISCONNECTING)) {
+        // Reentrance / concurrency checks: only one caller can disconnect this stub
+        final ClientStubState state = _state.get();
+        if (state.after(ClientStubState.INITIALIZING) && state.before(ClientStubState.DISCONNECTING)
+                && moveState(state, ClientStubState.DISCONNECTING)) {
+
+            _logger.info("{}Disconnecting from hub ...", _logPrefix);
 
-                // Kill the stub client
-                setState(ClientStubState.DISCONNECTING);
+            // Disconnect from hub
+            StubConnectorPool.getInstance().unregister(_connector);
+            _connector.setActive(false);
 
-                _logger.info("{}Disconnecting from hub ...", _logPrefix);
+            _logger.info("{}Dying ...", _logPrefix);
 
-                // Disconnect from hub
-                _connector.setActive(false);
+            moveState(ClientStubState.DISCONNECTING, ClientStubState.DIYING);
 
-                _logger.info("{}Dying ...", _logPrefix);
+            // openJDK issue: detach from started javaws process:
+            cleanup(true);
 
-                setState(ClientStubState.DIYING);
+            _logger.info("{}Disconnected.", _logPrefix);
+        }
+    }
+
+    /**
+     * Launch the real application unless a launch is already in flight (single-flight):
+     * bursts of messages only enqueue and share the same launch completion.
+     * The launch expires after the launch timeout so that a later message can launch the application again.
+     *
+     * @return future completed once the real application is detected (or failed / timed out)
+     */
+    public CompletableFuture<ClientStub> joinOrLaunchRealApplication() {
+        while (true) {
+            final CompletableFuture<ClientStub> inFlight = _launchFlight.get();
+            if (inFlight != null && !inFlight.isDone()) {
+                _logger.info("{}Launch already in flight: message queued.", _logPrefix);
+                return inFlight;
+            }
+            final CompletableFuture<ClientStub> flight = new CompletableFuture<ClientStub>();
+            if (_launchFlight.compareAndSet(inFlight, flight)) {
+                final long timeout = getLaunchTimeout(StubMonitor.CANCEL_TIMEOUT);
 
-                // openJDK issue: detach from started javaws process:
-                cleanup(true);
+                final ScheduledFuture<?> expiry = _forwardScheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (flight.completeExceptionally(new TimeoutException("Launch timed out after " + timeout + " ms"))) {
+                            _logger.info("{}Launch expired after {} ms.", _logPrefix, timeout);
+                        }
+                    }
+                }, timeout, TimeUnit.MILLISECONDS);
 
-                _logger.info("{}Disconnected.", _logPrefix);
+                flight.whenComplete(new BiConsumer<ClientStub, Throwable>() {
+                    @Override
+                    public void accept(final ClientStub stub, final Throwable failure) {
+                        expiry.cancel(false);
+                    }
+                });
+
+                launchRealApplication(LaunchScheduler.Priority.SAMP);
+                return flight;
             }
         }
     }
 
     /**
-     * Launch the real application
+     * Complete the launch in flight (if any)
+     *
+     * @param failure failure or null if the real application was detected
+     */
+    private void completeLaunchFlight(final Throwable failure) {
+        final CompletableFuture<ClientStub> flight = _launchFlight.get();
+        if (flight != null) {
+            if (failure == null) {
+                flight.complete(this);
+            } else {
+                flight.completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * Launch the real application (user action)
      */
     public void launchRealApplication() {
-        _logger.info("{}Launching real '{}' application ...", _logPrefix, _executionType);
+        launchRealApplication(LaunchScheduler.Priority.INTERACTIVE);
+    }
 
-        // Reentrance / concurrency checks
-        synchronized (_lock) {
+    /**
+     * Submit the launch of the real application to the launch scheduler
+     *
+     * @param priority launch priority
+     */
+    public void launchRealApplication(final LaunchScheduler.Priority priority) {
+        if (priority.isRequest()) {
+            _requestTime = System.nanoTime();
 
-            // Note: when the javaws does not start correctly the application => it will never connect to SAMP; let the user retry ...
-            switch (_executionType) {
-                case JNLP:
-                    final String finalJnlpUrl = getFinalJnlpUrl();
-                    if (finalJnlpUrl != null) {
-                        StatusBar.show("starting '" + _applicationName + "' recipient...");
-                        _logger.info("{}Launching JNLP '{}' ...", _logPrefix, finalJnlpUrl);
+            // learn usage and maybe start the next likely application:
+            SpeculativeLauncher.getInstance().requested(this);
+        }
+        if (_executionType == Type.CLI && getKnownApplicationCliPath() == null) {
+            // resolve the command-line path here: the launch itself runs on a launch scheduler thread
+            if (!priority.isRequest()) {
+                _logger.info("{}Command-line path unknown: {} launch skipped.", _logPrefix, priority);
+                return;
+            }
+            if (getApplicationCliPath() == null) {
+                _logger.info("{}Command-line path unknown: launch cancelled.", _logPrefix);
+                StatusBar.show("'" + _applicationName + "' not started: command-line path unknown.");
+                completeLaunchFlight(new IllegalStateException("Command-line path unknown"));
+                return;
+            }
+        }
+        synchronized (_standbyLock) {
+            // first request: the standby instance now belongs to the user unless its cancellation won
+            if (priority.isRequest() && _standby.compareAndSet(true, false)) {
+                if (!isConnected()) {
+                    _logger.info("{}Standby instance already running: claimed.", _logPrefix);
+                    return;
+                }
+                _logger.info("{}Standby instance claimed.", _logPrefix);
+            }
+            _logger.info("{}Submitting launch ({} priority) ...", _logPrefix, priority);
+
+            if (!LaunchScheduler.getInstance().submit(this, priority)) {
+                StatusBar.show("'" + _applicationName + "' is already starting...");
+            }
+        }
+    }
+
+    /**
+     * Launch the real application now (called by the launch scheduler)
+     *
+     * @return true if the real application registration is awaited (launch slot kept)
+     */
+    boolean startRealApplication() {
+        _logger.info("{}Launching real '{}' application ...", _logPrefix, _executionType);
+
+        boolean awaited = false;
 
-                        // stub is connected i.e. monitoring SAMP messages ...
-                        if (isConnected()) {
-                            // only change state if this stub is running:
-                            setState(ClientStubState.LAUNCHING);
+        // Note: when the javaws does not start correctly the application => it will never connect to SAMP; let the user retry ...
+        switch (_executionType) {
+            case JNLP:
+                final String finalJnlpUrl = getFinalJnlpUrl();
+                if (finalJnlpUrl != null) {
+                    StatusBar.show("starting '" + _applicationName + "' recipient...");
+                    _logger.info("{}Launching JNLP '{}' ...", _logPrefix, finalJnlpUrl);
 
+                    // stub is connected i.e. monitoring SAMP messages ...
+                    if (isConnected()) {
+                        // only change state if this stub is running (and not already launching):
+                        if (moveState(ClientStubState.LAUNCHING)) {
                             setClientButtonEnabled(false);
 
+                            _launchTime = System.nanoTime();
+
                             // get the process context to be able to kill it later ...
                             setJobContextId(JnlpStarter.launch(finalJnlpUrl, this));
+                            awaited = true;
                         } else {
-                            // just start application without callbacks:
-                            JnlpStarter.launch(finalJnlpUrl);
+                            _logger.info("{}Application already launched (state = {}).", _logPrefix, _state.get());
                         }
                     } else {
-                        _logger.error("{}JNLP URL not found.", _logPrefix);
+                        // just start application without callbacks:
+                        JnlpStarter.launch(finalJnlpUrl);
                     }
-                    break;
+                } else {
+                    _logger.error("{}JNLP URL not found.", _logPrefix);
+                }
+                break;
 
-                case WEB:
-                    // Get WebApp URL
-                    final String webAppURL = getWebApplicationUrl();
-                    if (webAppURL != null) {
-                        StatusBar.show("opening '" + _applicationName + "' web application...");
-                        _logger.info("{}Opening web application at URL '{}' ...", _logPrefix, webAppURL);
-                        BrowserLauncher.openURL(webAppURL);
-                    } else {
-                        _logger.error("{}Web URL not found.", _logPrefix);
-                    }
-                    break;
+            case WEB:
+                // Get WebApp URL
+                final String webAppURL = getWebApplicationUrl();
+                if (webAppURL != null) {
+                    StatusBar.show("opening '" + _applicationName + "' web application...");
+                    _logger.info("{}Opening web application at URL '{}' ...", _logPrefix, webAppURL);
+                    BrowserLauncher.openURL(webAppURL);
+                } else {
+                    _logger.error("{}Web URL not found.", _logPrefix);
+                }
+                break;
 
-                case CLI:
-                    final String applicationCliPath = getApplicationCliPath();
-                    if (applicationCliPath != null) {
-                        StatusBar.show("starting '" + _applicationName + "' recipient...");
-                        _logger.info("{}Launching command-line path '{}' ...", _logPrefix, applicationCliPath);
-                        CommandLineUtils.exec(applicationCliPath);
-                    } else {
-                        _logger.error("{}Command-line path not found.", _logPrefix);
+            case CLI:
+                final String applicationCliPath = getKnownApplicationCliPath();
+                if (applicationCliPath != null) {
+                    StatusBar.show("starting '" + _applicationName + "' recipient...");
+                    _logger.info("{}Launching command-line path '{}' ...", _logPrefix, applicationCliPath);
+                    if (isConnected()) {
+                        _launchTime = System.nanoTime();
+                        awaited = true;
                     }
-                    break;
+                    CommandLineUtils.exec(applicationCliPath);
+                } else {
+                    _logger.error("{}Command-line path not found.", _logPrefix);
+                }
+                break;
 
-                default:
-                    _logger.error("{}Could not handle unknown '{}' execution type.", _logPrefix, _executionType);
-                    break;
-            }
-            _logger.info("{}Launch done.", _logPrefix);
+            default:
+                _logger.error("{}Could not handle unknown '{}' execution type.", _logPrefix, _executionType);
+                break;
         }
+        _logger.info("{}Launch done.", _logPrefix);
+        return awaited;
+    }
+
+    /**
+     * Return the future completed once this stub listens to SAMP messages
+     *
+     * @return future completed with this stub once in LISTENING state
+     */
+    public CompletableFuture<ClientStub> getListeningFuture() {
+        return _listeningFuture;
+    }
+
+    /**
+     * Return the future completed once this stub has forwarded its messages and is done
+     *
+     * @return future completed with this stub once in DIYING state
+     */
+    public CompletableFuture<ClientStub> getSuccessFuture() {
+        return _successFuture;
     }
 
     /**
@@ -473,22 +888,19 @@ public final class ClientStub extends Observable implements JobListener {
      * @throws TimeoutException if the stub did not succeed in time
      */
     public void waitForSuccess(final long timeout) throws TimeoutException {
-        final long start = System.nanoTime();
+        _logger.debug("{}Waiting for stub to succeed ...", _logPrefix);
 
         // Wait for this client stub to die:
-        while (!getState().equals(ClientStubState.DIYING)) {
-            _logger.debug("{}Waiting for stub to succeed ...", _logPrefix);
-            try {
-                Thread.sleep(100L);
-            } catch (InterruptedException ie) {
-                _logger.error("{}Interrupted while waiting for success.", _logPrefix, ie);
-            }
-
-            final long time = (System.nanoTime() - start) / 1000000; // ms
-
-            if (time > timeout) {
-                throw new TimeoutException("Stub did not succeed in time !");
-            }
+        try {
+            getSuccessFuture().get(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+            _logger.error("{}Interrupted while waiting for success.", _logPrefix, ie);
+            Thread.currentThread().interrupt();
+            throw new TimeoutException("Interrupted while waiting for stub success !");
+        } catch (ExecutionException ee) {
+            throw new IllegalStateException("Stub failure", ee.getCause());
+        } catch (TimeoutException te) {
+            throw new TimeoutException("Stub did not succeed in time !");
         }
     }
 
@@ -509,60 +921,56 @@ public final class ClientStub extends Observable implements JobListener {
     private void cleanup(final boolean success) {
         _logger.info("{}Cleaning up ...", _logPrefix);
 
-        // Reentrance / concurrency checks
-        synchronized (_lock) {
-
-            if (_jobContextId != null) {
-                /*
-                 * Note: the cancel does not work on unix system:
-                 * javaws is the parent command that launches another command java ...
-                 *
-                 * Process.destroy does not kill sub processes: we could use ps -ef ... | kill
-                 * but it tricky again
-                 */
+        // Release the launch in flight (if any) and its launch slot:
+        completeLaunchFlight(success ? null : new IllegalStateException("Launch failed or cancelled"));
+        LaunchScheduler.getInstance().release(this);
 
-                _logger.debug("{}cleanup(): cancelOrKillJob = {}", _logPrefix, _jobContextId);
+        final Long jobContextId = _jobContextId;
+        if (jobContextId != null) {
+            /*
+             * Note: the cancel does not work on unix system:
+             * javaws is the parent command that launches another command java ...
+             *
+             * Process.destroy does not kill sub processes: we could use ps -ef ... | kill
+             * but it tricky again
+             */
 
-                LocalLauncher.cancelOrKillJob(_jobContextId);
-                setJobContextId(null);
-            }
+            _logger.debug("{}cleanup(): cancelOrKillJob = {}", _logPrefix, jobContextId);
 
-            // check current state to avoid reporting failure twice or incorrect state:
-            final boolean doFail = !success && (_status.after(ClientStubState.PROCESSING) && _status.before(ClientStubState.DISCONNECTING));
+            LocalLauncher.cancelOrKillJob(jobContextId);
+            setJobContextId(null);
+        }
 
-            _logger.debug("{}cleanup(): doFail = {}", _logPrefix, doFail);
+        // check current state to avoid reporting failure twice or incorrect state (report failure atomically):
+        final ClientStubState state = _state.get();
+        final boolean doFail = !success && (state.after(ClientStubState.PROCESSING) && state.before(ClientStubState.DISCONNECTING))
+                && moveState(state, ClientStubState.FAILING);
 
-            if (doFail) {
-                // Report failure
-                setState(ClientStubState.FAILING);
-            }
+        _logger.debug("{}cleanup(): doFail = {}", _logPrefix, doFail);
 
-            // Handle error
-            if (!_messages.isEmpty()) {
-                _logger.error("{}Unable to deliver '{}' message(s) :", _logPrefix, _messages.size());
-                for (Message msg : _messages) {
-                    _logger.error("\t- '{}'", msg);
-                }
+        // Disconnected, launch failed or cancelled while messages are pending: keep them (queued and spooled)
+        // for the next start until their time-to-live elapses
+        final int pending = _messages.size();
+        if (pending != 0) {
+            _logger.info("{}{} pending message(s) kept for later delivery.", _logPrefix, pending);
 
-                // @TODO : MessagePane ... => State = FAILED => Window (hide)
-            }
+            // @TODO : MessagePane ... => State = FAILED => Window (hide)
+        }
 
-            // Reset state
-            setJobContextId(null);
-            resetMessageQueue();
+        // Reset state
+        setJobContextId(null);
 
-            if (doFail) {
-                setState(ClientStubState.LISTENING);
+        if (doFail) {
+            moveState(ClientStubState.FAILING, ClientStubState.LISTENING);
 
-                // Update GUI
-                StatusBar.show("failed to start '" + getApplicationName() + "'.");
-            } else if (success) {
+            // Update GUI
+            StatusBar.show("failed to start '" + getApplicationName() + "'.");
+        } else if (success) {
 
-                // Update GUI
-                StatusBar.show("started '" + getApplicationName() + "'.");
-            }
-            setClientButtonEnabled(true);
+            // Update GUI
+            StatusBar.show("started '" + getApplicationName() + "'.");
         }
+        setClientButtonEnabled(true);
     }
 
     /**
@@ -572,10 +980,17 @@ public final class ClientStub extends Observable implements JobListener {
      */
     private boolean connectToHub() {
 
-        setState(ClientStubState.CONNECTING);
+        if (!moveState(ClientStubState.INITIALIZING, ClientStubState.CONNECTING)) {
+            return false;
+        }
 
         _logger.info("{}Connecting to hub ...", _logPrefix);
 
+        // Lazy initialisation: get a hook on the shared SAMP machinery
+        if (_connector == null) {
+            _connector = StubConnectorPool.getInstance().createConnector();
+        }
+
         // Set connector up
         _connector.declareMetadata(_description);
 
@@ -588,9 +1003,11 @@ public final class ClientStub extends Observable implements JobListener {
         }
 
         // Keep a look out for hubs if initial one shuts down
-        _connector.setAutoconnect(5);
+        StubConnectorPool.getInstance().register(_connector);
 
-        registerStubCapabilities();
+        if (!registerStubCapabilities()) {
+            return false;
+        }
 
         _logger.info("{}Connected.", _logPrefix);
 
@@ -599,10 +1016,14 @@ public final class ClientStub extends Observable implements JobListener {
 
     /**
      * Declare STUB capabilities to the hub.
+     *
+     * @return true if successfully registered, false otherwise (concurrent disconnection).
      */
-    private void registerStubCapabilities() {
+    private boolean registerStubCapabilities() {
 
-        setState(ClientStubState.REGISTERING);
+        if (!moveState(ClientStubState.CONNECTING, ClientStubState.REGISTERING)) {
+            return false;
+        }
 
         // Lazy initialisation
         if (_mHandlers == null) {
@@ -671,10 +1092,32 @@ public final class ClientStub extends Observable implements JobListener {
                         }
 
                         // Backup message and pending queue for later delivery
-                        _messages.add(message);
+                        final long receiveTime = System.currentTimeMillis();
+                        if (!_messages.offer(message, receiveTime)) {
+                            _logger.warn("{}Discarding '{}' message (duplicate or message queue full).", _logPrefix, message.getMType());
+                            return null;
+                        }
+                        _spool.append(message, receiveTime);
+
+                        // Download the message payload while the application is launching (if enabled):
+                        final PayloadCache payloadCache = getPayloadCache();
+                        if (payloadCache != null) {
+                            payloadCache.prefetch(message);
+                        }
 
-                        // Start application in background:
-                        launchRealApplication();
+                        switch (_state.get()) {
+                            case SEEKING:
+                                // Real application found: the message will be forwarded once it is ready
+                                _logger.info("{}Real application found: message queued.", _logPrefix);
+                                return null;
+                            case FORWARDING:
+                                forwardLateMessages();
+                                return null;
+                            default:
+                        }
+
+                        // Start application in background (unless a launch is already in flight):
+                        joinOrLaunchRealApplication();
 
                         // Once the application will have finish started and been fully registered to the hub,
                         // HubMonitor will detect it and ask the stub to forward any pending message to the real application.
@@ -693,79 +1136,667 @@ public final class ClientStub extends Observable implements JobListener {
 
         // If the client is not a web app (no SAMP capability at all)
         if (_mTypes.length > 0) {
+            // Listen before declaring subscriptions as messages may be received as soon as they are declared:
+            if (!moveState(ClientStubState.REGISTERING, ClientStubState.LISTENING)) {
+                return false;
+            }
+
             // This step is required to update message handlers into the hub:
             _connector.declareSubscriptions(_connector.computeSubscriptions());
 
             _logger.info("{}Declared SAMP subscriptions.", _logPrefix);
-
-            setState(ClientStubState.LISTENING);
         }
+        return true;
     }
 
     /**
-     * Implements callback from HubMonitor when the real application is detected... Note: this method is called using
-     * dedicated thread (may sleep for few seconds ...)
+     * Implements callback from HubMonitor when the real application is detected... Note: this method does not block:
+     * readiness probes and message forwarding are performed by the shared forward scheduler.
      *
      * @param recipientId recipient identifier of the real application.
      */
     public void forwardMessagesToRealRecipient(final String recipientId) {
         // Reentrance check
-        synchronized (_lock) {
-            if (_status.after(ClientStubState.REGISTERING) && _status.before(ClientStubState.DISCONNECTING)) {
-                _logger.info("{}Forwarding message(s) to real recipient connected with id '{}'.", _logPrefix, recipientId);
+        ClientStubState state = _state.get();
+        if (!(state.after(ClientStubState.REGISTERING) && state.before(ClientStubState.DISCONNECTING))) {
+            return;
+        }
+        if (state == ClientStubState.SEEKING || state == ClientStubState.FORWARDING) {
+            _logger.debug("{}Already forwarding message(s) to real recipient.", _logPrefix);
+            return;
+        }
+        _logger.info("{}Forwarding message(s) to real recipient connected with id '{}'.", _logPrefix, recipientId);
+
+        // Registered instance: never evicted from now on (warm standby or speculative launch)
+        _standby.set(false);
+
+        // Real application detected: complete the launch in flight and release its launch slot
+        completeLaunchFlight(null);
+        LaunchScheduler.getInstance().release(this);
+
+        // Learn the time to register the real application:
+        final long launchTime = _launchTime;
+        if (launchTime != 0L) {
+            StartupLagModel.getInstance().recordLaunchLag(_applicationName, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - launchTime));
+            _launchTime = 0L;
+        }
+
+        // Forward all received message to recipient (if any)
+        if (_messages.isEmpty()) {
+            _logger.info("{}No message to forward.", _logPrefix);
+
+            // Kill the stub client
+            disconnect();
+            return;
+        }
 
-                // Forward all received message to recipient (if any)
-                if (!_messages.isEmpty()) {
-                    setState(ClientStubState.SEEKING);
+        // Only one caller can start forwarding:
+        if (moveState(ClientStubState.SEEKING)) {
+            // Wait for application startup to finish (learned or registry lag used as upper bound)...
+            _forwardScheduler.execute(new ForwardTask(recipientId));
+        } else {
+            _logger.debug("{}Forward skipped (state = {}).", _logPrefix, _state.get());
+        }
+    }
 
-                    if (_sleepDelayBeforeNotify > 0L) {
-                        _logger.info("{}Waiting {} milliseconds to let real recipient finish its startup ...", _logPrefix, _sleepDelayBeforeNotify);
+    /**
+     * Forward pipeline step: probe the real recipient readiness (without blocking any caller nor forwarder thread),
+     * reschedule itself with an exponential backoff until ready or the forward deadline is elapsed, then forward messages.
+     */
+    private final class ForwardTask implements Runnable {
+
+        /** recipient identifier of the real application */
+        private final String _recipientId;
+        /** maximum delay in milliseconds to wait for the real recipient readiness */
+        private final long _maxDelay;
+        /** start time (nano time) */
+        private final long _start;
+        /** deadline (nano time) */
+        private final long _deadline;
+        /** mTypes of the pending messages (snapshot) */
+        private final Set<String> _pendingMTypes;
+        /** next probe delay in milliseconds */
+        private long _delay = PROBE_INITIAL_DELAY;
+        /** number of probes */
+        private int _probes = 0;
+
+        /**
+         * Constructor
+         *
+         * @param recipientId recipient identifier of the real application.
+         */
+        ForwardTask(final String recipientId) {
+            _recipientId = recipientId;
+            _maxDelay = getForwardDeadline();
+            _start = System.nanoTime();
+            _deadline = _start + TimeUnit.MILLISECONDS.toNanos(_maxDelay);
+            _pendingMTypes = _messages.mTypes();
+        }
 
-                        // Wait a while for application startup to finish...
-                        ThreadExecutors.sleep(_sleepDelayBeforeNotify);
+        /**
+         * Probe once then forward messages or reschedule this step
+         */
+        @Override
+        public void run() {
+            try {
+                probe();
+            } catch (RuntimeException re) {
+                _logger.error("{}Readiness probe failure: forwarding now.", _logPrefix, re);
+                forwardNow();
+            }
+        }
+
+        /**
+         * Check the real recipient subscriptions then ping it asynchronously if it supports samp.app.ping
+         */
+        private void probe() {
+            _probes++;
+            final Subscriptions subscriptions = SampManager.getSubscriptions(_recipientId);
+
+            if (subscriptions == null || !isSubscribed(subscriptions, _pendingMTypes)) {
+                retry();
+                return;
+            }
+            if (!subscriptions.isSubscribed(PING_MTYPE)) {
+                // Subscriptions are declared: consider the application ready
+                ready(subscriptions);
+                return;
+            }
+
+            final HubConnector connector = _connector;
+            if (connector == null || !connector.isConnected()) {
+                _logger.info("{}Hub connection lost: forwarding now.", _logPrefix);
+                forwardMessages(_recipientId, subscriptions);
+                return;
+            }
+
+            // Wait for the ping response at most until the deadline:
+            final int timeout = (int) Math.max(1L, Math.min(PROBE_PING_TIMEOUT,
+                    TimeUnit.NANOSECONDS.toSeconds(_deadline - System.nanoTime())));
+
+            final ResultHandler handler = new ResultHandler() {
+                /** true once the probe outcome is handled */
+                private final AtomicBoolean _handled = new AtomicBoolean(false);
+
+                @Override
+                public void result(final Client responder, final Response response) {
+                    if (response != null && response.isOK() && _handled.compareAndSet(false, true)) {
+                        resume(subscriptions, true);
                     }
+                }
 
-                    // Check real recipient availability
-                    final Subscriptions subscriptions = SampManager.getSubscriptions(recipientId);
-                    if (subscriptions != null) {
-                        // Try tyo forward each waiting message
-                        int messageIndex = 1;
-                        final int nbOfMessages = _messages.size();
-                        for (Message msg : _messages) {
-
-                            // Check that the current message really match one of the real recipient SAMP capability
-                            boolean subscriptionFound = false;
-                            for (Object mType : subscriptions.keySet()) {
-                                if (mType.toString().equalsIgnoreCase(msg.getMType())) {
-                                    subscriptionFound = true;
-                                    break;
-                                }
-                            }
-                            if (subscriptionFound) {
-                                // Forward the message
-                                setState(ClientStubState.FORWARDING);
-                                try {
-                                    _connector.getConnection().notify(recipientId, msg);
-                                    _logger.info("{}Forwarded message ({} / {}).", _logPrefix, messageIndex, nbOfMessages);
-                                } catch (SampException se) {
-                                    _logger.error("{}SAMP notication exception:", _logPrefix, se);
-                                }
-                            } else {
-                                _logger.info("{}Could not find '{}' mType ... skipping.", _logPrefix, msg.getMType());
-                            }
-                            messageIndex++;
+                @Override
+                public void done() {
+                    // Called once all results are received or on timeout:
+                    if (_handled.compareAndSet(false, true)) {
+                        resume(subscriptions, false);
+                    }
+                }
+            };
+            try {
+                connector.call(_recipientId, new Message(PING_MTYPE), handler, timeout);
+            } catch (SampException se) {
+                _logger.debug("{}samp.app.ping failed:", _logPrefix, se);
+                retry();
+            }
+        }
+
+        /**
+         * Continue this step in the forwarder thread pool once the ping outcome is known
+         *
+         * @param subscriptions real recipient subscriptions
+         * @param pong true if the real recipient answered to samp.app.ping
+         */
+        private void resume(final Subscriptions subscriptions, final boolean pong) {
+            final Runnable next = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (pong) {
+                            ready(subscriptions);
+                        } else {
+                            retry();
                         }
+                    } catch (RuntimeException re) {
+                        _logger.error("{}Readiness probe failure: forwarding now.", _logPrefix, re);
+                        forwardNow();
+                    }
+                }
+            };
+            try {
+                _forwardScheduler.execute(next);
+            } catch (RejectedExecutionException ree) {
+                _logger.debug("{}Forward scheduler stopped: forwarding now.", _logPrefix);
+                forwardNow();
+            }
+        }
+
+        /**
+         * Record the ready lag then forward messages
+         *
+         * @param subscriptions real recipient subscriptions
+         */
+        private void ready(final Subscriptions subscriptions) {
+            final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - _start);
+            _logger.info("{}Real recipient ready after {} ms ({} probe(s)).", _logPrefix, elapsed, _probes);
+
+            StartupLagModel.getInstance().recordReadyLag(_applicationName, elapsed);
+
+            forwardMessages(_recipientId, subscriptions);
+        }
+
+        /**
+         * Reschedule this step or forward messages anyway if the deadline is elapsed
+         */
+        private void retry() {
+            final long remaining = TimeUnit.NANOSECONDS.toMillis(_deadline - System.nanoTime());
+            if (remaining <= 0L) {
+                _logger.info("{}Real recipient not ready after {} ms ({} probe(s)): forwarding anyway.", _logPrefix, _maxDelay, _probes);
+                forwardNow();
+                return;
+            }
+
+            final long delay = Math.min(_delay, remaining);
+            _delay = Math.min(_delay * 2L, PROBE_MAX_DELAY);
+
+            _logger.debug("{}Waiting {} milliseconds to let real recipient finish its startup ...", _logPrefix, delay);
+
+            try {
+                _forwardScheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ree) {
+                _logger.debug("{}Forward scheduler stopped: forwarding now.", _logPrefix);
+                forwardNow();
+            }
+        }
+
+        /**
+         * Forward messages with the current subscriptions; disconnect this stub (keeping the spooled messages)
+         * if forwarding fails too
+         */
+        private void forwardNow() {
+            try {
+                forwardMessages(_recipientId, SampManager.getSubscriptions(_recipientId));
+            } catch (RuntimeException re) {
+                _logger.error("{}Forward failure: disconnecting.", _logPrefix, re);
+                disconnect();
+            }
+        }
+    }
+
+    /**
+     * Forward pending messages to the real recipient then disconnect this stub
+     *
+     * @param recipientId recipient identifier of the real application.
+     * @param subscriptions real recipient subscriptions (may be null)
+     */
+    private void forwardMessages(final String recipientId, final Subscriptions subscriptions) {
+        // The stub may have been cancelled or disconnected meanwhile:
+        if (!moveState(ClientStubState.SEEKING, ClientStubState.FORWARDING)) {
+            _logger.info("{}Forward aborted (state = {}).", _logPrefix, _state.get());
+            return;
+        }
+        _forwardRecipientId = recipientId;
+        _forwardSubscriptions = subscriptions;
+        _forwardCalls.set(1);
+
+        drainToRealRecipient();
+        releaseForward();
+    }
+
+    /**
+     * Forward messages received while forwarding (call-and-track mode) to the already found real recipient
+     * instead of launching the application again
+     */
+    private void forwardLateMessages() {
+        int calls;
+        do {
+            calls = _forwardCalls.get();
+            if (calls < 0) {
+                // forward ended meanwhile:
+                _logger.info("{}Forward ended: message kept in spool for later delivery.", _logPrefix);
+                return;
+            }
+        } while (!_forwardCalls.compareAndSet(calls, calls + 1));
+
+        _logger.info("{}Real application found: forwarding late message.", _logPrefix);
+
+        final Runnable forwardTask = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    drainToRealRecipient();
+                } finally {
+                    releaseForward();
+                }
+            }
+        };
+        try {
+            _forwardScheduler.execute(forwardTask);
+        } catch (RejectedExecutionException ree) {
+            forwardTask.run();
+        }
+    }
+
+    /**
+     * Forward all queued messages (in order) to the real recipient
+     */
+    private void drainToRealRecipient() {
+        final String recipientId = _forwardRecipientId;
+        final Subscriptions subscriptions = _forwardSubscriptions;
+
+        // Check real recipient availability
+        if (subscriptions == null) {
+            return;
+        }
 
-                        resetMessageQueue();
+        // Calls in progress (call-and-track mode)
+        final boolean callAndTrack = _preferences.getPreferenceAsBoolean(PreferenceKey.FORWARD_CALL_AND_TRACK);
+
+        synchronized (_forwardLock) {
+            // Try tyo forward each waiting message
+            int messageIndex = 1;
+            final int nbOfMessages = _messages.size();
+            Message msg;
+            while ((msg = _messages.poll()) != null) {
+
+                // Check that the current message really match one of the real recipient SAMP capability
+                boolean subscriptionFound = false;
+                for (Object mType : subscriptions.keySet()) {
+                    if (mType.toString().equalsIgnoreCase(msg.getMType())) {
+                        subscriptionFound = true;
+                        break;
+                    }
+                }
+                if (subscriptionFound) {
+                    // Forward the message
+                    final Message original = msg;
+                    final Message forwarded = rewritePayload(original);
+                    if (callAndTrack) {
+                        // Responses are sent to this stub: only disconnect once all calls are done
+                        _forwardCalls.incrementAndGet();
+
+                        final TrackedCall call = new TrackedCall(recipientId, forwarded, messageIndex, nbOfMessages);
+                        call.getFuture().whenComplete(new BiConsumer<Boolean, Throwable>() {
+                            @Override
+                            public void accept(final Boolean result, final Throwable failure) {
+                                releasePayload(original);
+                                releaseForward();
+                            }
+                        });
+                        call.run();
+                    } else {
+                        notifyRealRecipient(recipientId, forwarded, messageIndex, nbOfMessages);
+                        releasePayload(original);
                     }
                 } else {
-                    _logger.info("{}No message to forward.", _logPrefix);
+                    _metrics.incUnsubscribed();
+                    _logger.info("{}Could not find '{}' mType ... skipping.", _logPrefix, msg.getMType());
                 }
+                messageIndex++;
+            }
+        }
+    }
 
-                // Kill the stub client
-                disconnect();
+    /**
+     * Release one forward pass or tracked call: once none is left, forward the messages received meanwhile (if any)
+     * or end forwarding
+     */
+    private void releaseForward() {
+        if (_forwardCalls.decrementAndGet() != 0) {
+            return;
+        }
+        while (_forwardCalls.get() == 0) {
+            if (_forwardSubscriptions != null && !_messages.isEmpty()) {
+                if (_forwardCalls.compareAndSet(0, 1)) {
+                    drainToRealRecipient();
+                    if (_forwardCalls.decrementAndGet() != 0) {
+                        return;
+                    }
+                }
+            } else if (_forwardCalls.compareAndSet(0, -1)) {
+                endForward();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Compact the spool once messages are delivered then disconnect this stub
+     */
+    private void endForward() {
+        // Delivered: compact spool
+        _spool.compact(_messages.records());
+
+        _logger.info("{}Messages: {}", _logPrefix, _metrics);
+
+        // Kill the stub client
+        disconnect();
+    }
+
+    /**
+     * Message forwarded using an asynchronous SAMP call (call-and-track mode): records the delivery latency (hub accepted
+     * the call) and the processing latency (real application responded), retrying transient failures (hub errors).
+     */
+    private final class TrackedCall implements ResultHandler, Runnable {
+
+        /** recipient identifier of the real application */
+        private final String _recipientId;
+        /** message to forward */
+        private final Message _msg;
+        /** message index (log) */
+        private final int _messageIndex;
+        /** number of messages (log) */
+        private final int _nbOfMessages;
+        /** completed with true if the real application processed the message successfully */
+        private final CompletableFuture<Boolean> _future = new CompletableFuture<Boolean>();
+        /** number of attempts */
+        private int _attempts = 0;
+        /** send time of the current attempt (nano time) */
+        private volatile long _sendTime;
+        /** true if a response was received */
+        private volatile boolean _responded = false;
+
+        /**
+         * Constructor
+         *
+         * @param recipientId recipient identifier of the real application.
+         * @param msg message to forward
+         * @param messageIndex message index (log)
+         * @param nbOfMessages number of messages (log)
+         */
+        TrackedCall(final String recipientId, final Message msg, final int messageIndex, final int nbOfMessages) {
+            _recipientId = recipientId;
+            _msg = msg;
+            _messageIndex = messageIndex;
+            _nbOfMessages = nbOfMessages;
+        }
+
+        /**
+         * @return future completed once this call is done
+         */
+        CompletableFuture<Boolean> getFuture() {
+            return _future;
+        }
+
+        /**
+         * Send (or resend) the call
+         */
+        @Override
+        public void run() {
+            _attempts++;
+            _sendTime = System.nanoTime();
+            try {
+                _connector.call(_recipientId, _msg, this, FORWARD_CALL_TIMEOUT);
+                _metrics.recordDeliveryLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - _sendTime));
+            } catch (SampException se) {
+                retryOrFail(se);
+            }
+        }
+
+        /**
+         * Handle the response of the real application
+         *
+         * @param responder responder client
+         * @param response response
+         */
+        @Override
+        public void result(final Client responder, final Response response) {
+            _responded = true;
+            final long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - _sendTime);
+            _metrics.recordProcessingLatency(latency);
+
+            if (response.isOK()) {
+                _metrics.incForwarded();
+                _logger.info("{}Forwarded message ({} / {}): processed in {} ms.", _logPrefix, _messageIndex, _nbOfMessages, latency);
+                _future.complete(Boolean.TRUE);
+            } else {
+                _metrics.incFailures();
+                final Response.ErrInfo errInfo = response.getErrInfo();
+                _logger.warn("{}Forwarded message ({} / {}) failed [{}]: {}", _logPrefix, _messageIndex, _nbOfMessages,
+                        response.getStatus(), (errInfo != null) ? errInfo.getErrortxt() : null);
+                _future.complete(Boolean.FALSE);
             }
         }
+
+        /**
+         * Handle the end of the call (response received or timeout)
+         */
+        @Override
+        public void done() {
+            if (!_responded) {
+                _metrics.incFailures();
+                _logger.warn("{}No response for forwarded message ({} / {}) after {} s.", _logPrefix, _messageIndex, _nbOfMessages, FORWARD_CALL_TIMEOUT);
+            }
+            _future.complete(Boolean.valueOf(_responded));
+        }
+
+        /**
+         * Retry the call after a transient failure if allowed, fail otherwise
+         *
+         * @param se SAMP exception
+         */
+        private void retryOrFail(final SampException se) {
+            if (_attempts <= _preferences.getPreferenceAsInt(PreferenceKey.FORWARD_MAX_RETRIES)) {
+                _metrics.incRetries();
+                _logger.info("{}Forward failed (attempt {}): retrying ...", _logPrefix, _attempts);
+                try {
+                    _forwardScheduler.schedule(this, FORWARD_RETRY_DELAY * _attempts, TimeUnit.MILLISECONDS);
+                    return;
+                } catch (RejectedExecutionException ree) {
+                    _logger.debug("{}Forward scheduler stopped.", _logPrefix);
+                }
+            }
+            _metrics.incUndelivered();
+            _logger.error("{}SAMP call exception:", _logPrefix, se);
+            _future.complete(Boolean.FALSE);
+        }
+    }
+
+    /**
+     * @return true if messages are waiting for the real application (restored from the spool for example)
+     */
+    public boolean hasPendingMessages() {
+        return !_messages.isEmpty();
+    }
+
+    /**
+     * Replay pending messages (restored from the spool) to the given real recipient when this stub is not connected
+     * (the real application was already running): messages are sent using the AppLauncher SAMP connection.
+     *
+     * @param recipientId recipient identifier of the real application.
+     */
+    public void replayPendingMessages(final String recipientId) {
+        if (isConnected() || _messages.isEmpty()) {
+            return;
+        }
+        _logger.info("{}Replaying {} pending message(s) to real recipient connected with id '{}'.", _logPrefix, _messages.size(), recipientId);
+
+        final Subscriptions subscriptions = SampManager.getSubscriptions(recipientId);
+        if (subscriptions == null) {
+            return;
+        }
+        int messageIndex = 1;
+        final int nbOfMessages = _messages.size();
+        Message msg;
+        while ((msg = _messages.poll()) != null) {
+            if (subscriptions.isSubscribed(msg.getMType())) {
+                notifyRealRecipient(recipientId, rewritePayload(msg), messageIndex, nbOfMessages);
+                releasePayload(msg);
+            } else {
+                _metrics.incUnsubscribed();
+                _logger.info("{}Could not find '{}' mType ... skipping.", _logPrefix, msg.getMType());
+            }
+            messageIndex++;
+        }
+
+        // Delivered: compact spool
+        _spool.compact(_messages.records());
+    }
+
+    /**
+     * Return the shared payload cache if payload prefetching is enabled
+     *
+     * @return payload cache or null if disabled
+     */
+    private PayloadCache getPayloadCache() {
+        if (!_preferences.getPreferenceAsBoolean(PreferenceKey.PAYLOAD_PREFETCH)) {
+            return null;
+        }
+        return PayloadCache.getInstance(_preferences.getPreferenceAsInt(PreferenceKey.PAYLOAD_CACHE_MAX_SIZE) * 1024L * 1024L);
+    }
+
+    /**
+     * Return the given message using the prefetched payload (local file: URL) if available
+     *
+     * @param msg message to forward
+     * @return message to forward
+     */
+    private Message rewritePayload(final Message msg) {
+        final PayloadCache payloadCache = getPayloadCache();
+        return (payloadCache != null) ? payloadCache.rewrite(msg) : msg;
+    }
+
+    /**
+     * Release the local payload copy of the given message once forwarded (if payload prefetching is enabled)
+     *
+     * @param msg original message
+     */
+    private void releasePayload(final Message msg) {
+        final PayloadCache payloadCache = getPayloadCache();
+        if (payloadCache != null) {
+            payloadCache.release(msg);
+        }
+    }
+
+    /**
+     * Send the given message to the real recipient using the stub connection if connected,
+     * the AppLauncher SAMP connection otherwise
+     *
+     * @param recipientId recipient identifier of the real application.
+     * @param msg message to send
+     * @param messageIndex message index (log)
+     * @param nbOfMessages number of messages (log)
+     */
+    private void notifyRealRecipient(final String recipientId, final Message msg, final int messageIndex, final int nbOfMessages) {
+        try {
+            final HubConnector connector = _connector;
+            final HubConnection connection = (connector != null) ? connector.getConnection() : null;
+            if (connection != null) {
+                connection.notify(recipientId, msg);
+            } else {
+                SampManager.sendMessageTo(msg.getMType(), recipientId, msg.getParams());
+            }
+            _metrics.incForwarded();
+            _logger.info("{}Forwarded message ({} / {}).", _logPrefix, messageIndex, nbOfMessages);
+        } catch (SampException se) {
+            _metrics.incUndelivered();
+            _logger.error("{}SAMP notication exception:", _logPrefix, se);
+        }
+    }
+
+    /**
+     * Return the maximum delay to wait for the real recipient readiness:
+     * based on the learned ready lag if known, the registry lag otherwise
+     *
+     * @return delay in milliseconds
+     */
+    private long getForwardDeadline() {
+        final long readyLag = StartupLagModel.getInstance().getReadyLag(_applicationName);
+        if (readyLag < 0L) {
+            return _sleepDelayBeforeNotify;
+        }
+        return Math.max(MIN_READY_DEADLINE, LAG_SAFETY_FACTOR * readyLag);
+    }
+
+    /**
+     * Return the timeout to cancel the launch of the real application:
+     * the given default timeout, only extended by the learned launch lag if known (slow applications)
+     *
+     * @param defaultTimeout default (minimum) timeout in milliseconds
+     * @return timeout in milliseconds
+     */
+    public long getLaunchTimeout(final long defaultTimeout) {
+        final long launchLag = StartupLagModel.getInstance().getLaunchLag(_applicationName);
+        if (launchLag < 0L) {
+            return defaultTimeout;
+        }
+        return Math.max(defaultTimeout, LAG_SAFETY_FACTOR * launchLag);
+    }
+
+    /**
+     * Return true if the given subscriptions contain all the given mTypes
+     *
+     * @param subscriptions real recipient subscriptions
+     * @param mTypes mTypes of the pending messages
+     * @return true if all mTypes are subscribed
+     */
+    private static boolean isSubscribed(final Subscriptions subscriptions, final Set<String> mTypes) {
+        for (String mType : mTypes) {
+            if (!subscriptions.isSubscribed(mType)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -816,6 +1847,11 @@ public final class ClientStub extends Observable implements JobListener {
                 _logger.info("{}JNLP execution status: {}\n{}",
                         _logPrefix, jobContext.getState(), jobContext.getRing().getContent("Ring buffer:\n"));
 
+                if (!jobContext.getId().equals(_jobContextId)) {
+                    // job already cancelled by this stub (killed or standby launch cancelled):
+                    break;
+                }
+
                 // JNLP process failed: clean up:
                 cleanup(false);
                 break;
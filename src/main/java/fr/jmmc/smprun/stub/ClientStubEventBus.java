@@ -0,0 +1,179 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun.stub;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous client stub event bus: each listener has its own executor (one thread at most, released when idle)
+ * and bounded queue so slow listeners (EDT bound) never stall SAMP message handling or the hub monitor.
+ * Events are delivered in order; when a listener queue is full, its oldest pending event is dropped.
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+public final class ClientStubEventBus {
+
+    /** Class logger */
+    private static final Logger _logger = LoggerFactory.getLogger(ClientStubEventBus.class.getName());
+    /** default listener queue capacity */
+    public static final int DEFAULT_QUEUE_CAPACITY = 32;
+    /** idle delay in seconds before releasing a listener thread */
+    private static final long IDLE_TIMEOUT = 10L;
+    /* members */
+    /** bus name (thread names) */
+    private final String _name;
+    /** registered listeners */
+    private final List<ListenerEntry> _listeners = new CopyOnWriteArrayList<ListenerEntry>();
+
+    /**
+     * Constructor
+     *
+     * @param name bus name
+     */
+    public ClientStubEventBus(final String name) {
+        _name = name;
+    }
+
+    /**
+     * Register the given listener using the default queue capacity
+     *
+     * @param listener listener to register
+     */
+    public void addListener(final ClientStubListener listener) {
+        addListener(listener, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Register the given listener
+     *
+     * @param listener listener to register
+     * @param capacity maximum number of pending events for this listener
+     */
+    public void addListener(final ClientStubListener listener, final int capacity) {
+        _listeners.add(new ListenerEntry(listener, capacity));
+    }
+
+    /**
+     * Unregister the given listener (pending events are discarded)
+     *
+     * @param listener listener to unregister
+     */
+    public void removeListener(final ClientStubListener listener) {
+        for (ListenerEntry entry : _listeners) {
+            if (entry._listener == listener) {
+                _listeners.remove(entry);
+                entry._executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Publish the given state change to all listeners (never blocks)
+     *
+     * @param client client stub
+     * @param state new client stub state
+     */
+    public void publish(final ClientStub client, final ClientStubState state) {
+        for (final ListenerEntry entry : _listeners) {
+            entry._executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        entry._listener.stateChanged(client, state);
+                    } catch (RuntimeException re) {
+                        _logger.error("Listener failure: {}", entry._listener, re);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * @return total number of events dropped by full listener queues
+     */
+    public long getDroppedEventCount() {
+        long count = 0L;
+        for (ListenerEntry entry : _listeners) {
+            count += entry._dropped.get();
+        }
+        return count;
+    }
+
+    /**
+     * Registered listener with its executor
+     */
+    private final class ListenerEntry implements RejectedExecutionHandler {
+
+        /** listener */
+        final ClientStubListener _listener;
+        /** dedicated executor */
+        final ThreadPoolExecutor _executor;
+        /** dropped event counter */
+        final AtomicLong _dropped = new AtomicLong();
+
+        /**
+         * Constructor
+         *
+         * @param listener listener
+         * @param capacity maximum number of pending events
+         */
+        ListenerEntry(final ClientStubListener listener, final int capacity) {
+            _listener = listener;
+            _executor = new ThreadPoolExecutor(1, 1, IDLE_TIMEOUT, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(capacity),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(final Runnable r) {
+                            final Thread thread = new Thread(r, "StubEvents-" + _name);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    }, this);
+            _executor.allowCoreThreadTimeOut(true);
+        }
+
+        /**
+         * Queue full: drop the oldest pending event and retry
+         *
+         * @param r event to deliver
+         * @param executor listener executor
+         */
+        @Override
+        public void rejectedExecution(final Runnable r, final ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                return;
+            }
+            if (executor.getQueue().poll() != null) {
+                _dropped.incrementAndGet();
+                _logger.debug("StubEvents-{}: queue full, dropped oldest event for {}", _name, _listener);
+            }
+            executor.execute(r);
+        }
+    }
+}
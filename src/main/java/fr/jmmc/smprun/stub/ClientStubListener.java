@@ -0,0 +1,36 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun.stub;
+
+/**
+ * Listener notified of client stub state changes (see ClientStubEventBus).
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+public interface ClientStubListener {
+
+    /**
+     * Handle the client stub state change (called by the listener dedicated thread)
+     *
+     * @param client client stub
+     * @param state new client stub state
+     */
+    void stateChanged(ClientStub client, ClientStubState state);
+}
@@ -19,6 +19,11 @@
  ******************************************************************************/
 package fr.jmmc.smprun.stub;
 
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * Enumeration of all the internal states a stub can go through.
  * 
@@ -52,6 +57,23 @@ public enum ClientStubState {
     DIYING(10, "Done"),
     /** failure state means an error occurred when starting the application */
     FAILING(11, "Failed to start the application");
+    /** allowed transitions (state machine) */
+    private static final Map<ClientStubState, Set<ClientStubState>> TRANSITIONS = new EnumMap<ClientStubState, Set<ClientStubState>>(ClientStubState.class);
+
+    static {
+        TRANSITIONS.put(UNDEFINED, EnumSet.of(INITIALIZING));
+        TRANSITIONS.put(INITIALIZING, EnumSet.of(CONNECTING));
+        TRANSITIONS.put(CONNECTING, EnumSet.of(REGISTERING, DISCONNECTING));
+        TRANSITIONS.put(REGISTERING, EnumSet.of(LISTENING, DISCONNECTING));
+        TRANSITIONS.put(LISTENING, EnumSet.of(PROCESSING, LAUNCHING, SEEKING, DISCONNECTING));
+        TRANSITIONS.put(PROCESSING, EnumSet.of(LAUNCHING, SEEKING, FAILING, DISCONNECTING));
+        TRANSITIONS.put(LAUNCHING, EnumSet.of(LISTENING, SEEKING, FAILING, DISCONNECTING));
+        TRANSITIONS.put(SEEKING, EnumSet.of(FORWARDING, FAILING, DISCONNECTING));
+        TRANSITIONS.put(FORWARDING, EnumSet.of(FAILING, DISCONNECTING));
+        TRANSITIONS.put(DISCONNECTING, EnumSet.of(DIYING));
+        TRANSITIONS.put(DIYING, EnumSet.of(INITIALIZING));
+        TRANSITIONS.put(FAILING, EnumSet.of(LISTENING, DISCONNECTING));
+    }
     /* members */
     /** the numerical order of the internal progress (steps equal to zero don't trigger GUI updates) */
     private final int _step;
@@ -93,6 +115,15 @@ public enum ClientStubState {
         return _step < state.step();
     }
 
+    /**
+     * Return true if the transition from this state to the given state is allowed
+     * @param state next state
+     * @return true if the transition from this state to the given state is allowed
+     */
+    public boolean canMoveTo(final ClientStubState state) {
+        return TRANSITIONS.get(this).contains(state);
+    }
+
     /**
      * @return the user displayable text to explain the internal state
      */
@@ -106,7 +137,7 @@ public enum ClientStubState {
      */
     public static void main(String[] args) {
         for (ClientStubState s : ClientStubState.values()) {
-            System.out.println("State '" + s + "' = [" + s.step() + ", '" + s.message() + "'].");
+            System.out.println("State '" + s + "' = [" + s.step() + ", '" + s.message() + "'] -> " + TRANSITIONS.get(s) + ".");
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,409 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun.stub;
+
+import fr.jmmc.jmcs.gui.component.StatusBar;
+import fr.jmmc.smprsc.data.stub.model.Type;
+import fr.jmmc.smprun.preference.PreferenceKey;
+import fr.jmmc.smprun.preference.Preferences;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Central scheduler of real application launches:
+ * the number of concurrent launches is capped according to the available cores and free physical memory
+ * (or the launch.max.concurrent preference), other launches are queued by priority (dock click first).
+ *
+ * A launch slot is held from the launch until the real application registers to the hub, fails, is cancelled
+ * or the launch timeout elapses. Web applications are opened immediately (no slot).
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+public final class LaunchScheduler {
+
+    /** Class logger */
+    private static final Logger _logger = LoggerFactory.getLogger(LaunchScheduler.class.getName());
+    /** one megabyte */
+    private static final long MEGA = 1024L * 1024L;
+    /** singleton */
+    private static final LaunchScheduler _instance = new LaunchScheduler();
+
+    /**
+     * Launch priorities (highest first)
+     */
+    public enum Priority {
+
+        /** user action (dock click) */
+        INTERACTIVE,
+        /** SAMP message intercepted by a stub */
+        SAMP,
+        /** background launch (warm standby) */
+        BACKGROUND,
+        /** speculative launch (usage prediction) */
+        SPECULATIVE;
+
+        /**
+         * @return true if this priority corresponds to an explicit request (user action or SAMP message)
+         */
+        public boolean isRequest() {
+            return this == INTERACTIVE || this == SAMP;
+        }
+    }
+    /* members */
+    /** AppLauncher shared preferences */
+    private final Preferences _preferences;
+    /** launch executor (launches and slot timeouts) */
+    private final ScheduledExecutorService _executor;
+    /** queued launch requests ordered by priority then submission order */
+    private final PriorityQueue<LaunchRequest> _queue = new PriorityQueue<LaunchRequest>();
+    /** running launches (holding a slot) with their timeout */
+    private final Map<ClientStub, ScheduledFuture<?>> _running = new IdentityHashMap<ClientStub, ScheduledFuture<?>>();
+    /** submission counter (FIFO order within the same priority) */
+    private final AtomicLong _sequence = new AtomicLong();
+    /** queue wait time statistics */
+    private final StubMetrics.Latency _waitTime = new StubMetrics.Latency();
+
+    /**
+     * @return the singleton instance
+     */
+    public static LaunchScheduler getInstance() {
+        return _instance;
+    }
+
+    /**
+     * Private constructor
+     */
+    private LaunchScheduler() {
+        _preferences = Preferences.getInstance();
+        _executor = Executors.newScheduledThreadPool(2, new ThreadFactory() {
+            /** thread counter */
+            private final AtomicInteger _count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, LaunchScheduler.class.getSimpleName() + "-" + _count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Submit the launch of the real application of the given stub
+     *
+     * @param stub client stub to launch
+     * @param priority launch priority
+     * @return true if the launch was submitted, false if it is already queued or running
+     */
+    public boolean submit(final ClientStub stub, final Priority priority) {
+        if (stub.getExecutionType() == Type.WEB) {
+            // opening a browser page does not need any launch slot:
+            _executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    stub.startRealApplication();
+                }
+            });
+            return true;
+        }
+
+        final int depth;
+        synchronized (this) {
+            if (_running.containsKey(stub)) {
+                _logger.info("Launch of '{}' already running.", stub.getApplicationName());
+                return false;
+            }
+            for (Iterator<LaunchRequest> it = _queue.iterator(); it.hasNext();) {
+                final LaunchRequest queued = it.next();
+                if (queued.stub == stub) {
+                    if (priority.compareTo(queued.priority) >= 0) {
+                        _logger.info("Launch of '{}' already queued.", stub.getApplicationName());
+                        return false;
+                    }
+                    // raise priority (keep the original submission time):
+                    it.remove();
+                    _queue.add(new LaunchRequest(stub, priority, queued.sequence, queued.time));
+                    dispatch();
+                    return true;
+                }
+            }
+            _queue.add(new LaunchRequest(stub, priority, _sequence.incrementAndGet(), System.nanoTime()));
+            dispatch();
+            if (_running.containsKey(stub)) {
+                return true;
+            }
+            depth = _queue.size();
+        }
+        _logger.info("Launch of '{}' queued ({} pending, {} running).", stub.getApplicationName(), depth, getRunningCount());
+        StatusBar.show("'" + stub.getApplicationName() + "' launch queued (" + depth + " pending)...");
+        return true;
+    }
+
+    /**
+     * Release the launch slot (or remove the queued request) of the given stub:
+     * called once the real application is detected, or on failure / cancellation
+     *
+     * @param stub client stub
+     */
+    public void release(final ClientStub stub) {
+        synchronized (this) {
+            final ScheduledFuture<?> timeout = _running.remove(stub);
+            if (timeout != null) {
+                timeout.cancel(false);
+                _logger.debug("Launch slot of '{}' released.", stub.getApplicationName());
+            } else {
+                for (Iterator<LaunchRequest> it = _queue.iterator(); it.hasNext();) {
+                    if (it.next().stub == stub) {
+                        it.remove();
+                        _logger.info("Queued launch of '{}' cancelled.", stub.getApplicationName());
+                        break;
+                    }
+                }
+            }
+            dispatch();
+        }
+    }
+
+    /**
+     * Remove the queued launch request of the given stub (launches already started are left unchanged)
+     *
+     * @param stub client stub
+     * @return true if a queued request was removed
+     */
+    public synchronized boolean withdraw(final ClientStub stub) {
+        for (Iterator<LaunchRequest> it = _queue.iterator(); it.hasNext();) {
+            if (it.next().stub == stub) {
+                it.remove();
+                _logger.info("Queued launch of '{}' withdrawn.", stub.getApplicationName());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return true if the launch of the given stub is queued or running
+     *
+     * @param stub client stub
+     * @return true if the launch of the given stub is queued or running
+     */
+    public synchronized boolean isScheduled(final ClientStub stub) {
+        if (_running.containsKey(stub)) {
+            return true;
+        }
+        for (LaunchRequest request : _queue) {
+            if (request.stub == stub) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return true if the launch of the given stub holds a launch slot (started)
+     *
+     * @param stub client stub
+     * @return true if the launch of the given stub holds a launch slot
+     */
+    public synchronized boolean isRunning(final ClientStub stub) {
+        return _running.containsKey(stub);
+    }
+
+    /**
+     * @return number of queued launches
+     */
+    public synchronized int getQueueDepth() {
+        return _queue.size();
+    }
+
+    /**
+     * @return number of running launches (holding a slot)
+     */
+    public synchronized int getRunningCount() {
+        return _running.size();
+    }
+
+    /**
+     * @return queue wait time statistics
+     */
+    public StubMetrics.Latency getWaitTime() {
+        return _waitTime;
+    }
+
+    /**
+     * Start queued launches while slots are available (must be called while holding this lock)
+     */
+    private void dispatch() {
+        while (!_queue.isEmpty() && canLaunch(_running.size())) {
+            final LaunchRequest request = _queue.poll();
+            final ClientStub stub = request.stub;
+
+            final long waitTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - request.time);
+            _waitTime.record(waitTime);
+
+            _logger.info("Starting launch of '{}' ({} priority, waited {} ms, {} pending).",
+                    stub.getApplicationName(), request.priority, waitTime, _queue.size());
+
+            // release the slot anyway once the launch timeout elapsed:
+            _running.put(stub, _executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    _logger.info("Launch of '{}' timed out: slot released.", stub.getApplicationName());
+                    release(stub);
+                }
+            }, stub.getLaunchTimeout(StubMonitor.CANCEL_TIMEOUT), TimeUnit.MILLISECONDS));
+
+            _executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    boolean pending = false;
+                    try {
+                        pending = stub.startRealApplication();
+                    } finally {
+                        if (!pending) {
+                            // no application registration to wait for:
+                            release(stub);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Return true if another launch can start given the number of running launches
+     *
+     * @param running number of running launches
+     * @return true if another launch can start
+     */
+    private boolean canLaunch(final int running) {
+        final int maxConcurrent = _preferences.getPreferenceAsInt(PreferenceKey.LAUNCH_MAX_CONCURRENT);
+        // free physical memory is only used by the automatic mode:
+        final long freeMemory = (running == 0 || maxConcurrent > 0) ? -1L : getFreePhysicalMemory();
+
+        return canLaunch(running, maxConcurrent, Runtime.getRuntime().availableProcessors(), freeMemory,
+                MEGA * _preferences.getPreferenceAsInt(PreferenceKey.LAUNCH_MEMORY_PER_APPLICATION));
+    }
+
+    /**
+     * Return true if another launch can start given the number of running launches and the available resources
+     *
+     * @param running number of running launches
+     * @param maxConcurrent maximum number of concurrent launches or 0 for automatic
+     * @param cores number of available processors
+     * @param freeMemory free physical memory in bytes or -1 if unknown
+     * @param memoryPerApplication memory used by one application in bytes
+     * @return true if another launch can start
+     */
+    static boolean canLaunch(final int running, final int maxConcurrent, final int cores, final long freeMemory,
+                             final long memoryPerApplication) {
+        if (running == 0) {
+            // always allow one launch:
+            return true;
+        }
+        if (maxConcurrent > 0) {
+            return running < maxConcurrent;
+        }
+        // automatic: half the cores and enough free physical memory for another JVM:
+        if (running >= Math.max(1, cores / 2)) {
+            return false;
+        }
+        return freeMemory < 0L || freeMemory >= memoryPerApplication;
+    }
+
+    /**
+     * @return free physical memory in bytes or -1 if unknown
+     */
+    static long getFreePhysicalMemory() {
+        final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return getFreePhysicalMemorySize((com.sun.management.OperatingSystemMXBean) os);
+        }
+        return -1L;
+    }
+
+    /**
+     * Note: getFreeMemorySize() replaces getFreePhysicalMemorySize() only since JDK 14 whereas AppLauncher still
+     * runs on Java 8: keep the deprecated method here only.
+     *
+     * @param os operating system bean
+     * @return free physical memory in bytes
+     */
+    @SuppressWarnings("deprecation")
+    private static long getFreePhysicalMemorySize(final com.sun.management.OperatingSystemMXBean os) {
+        return os.getFreePhysicalMemorySize();
+    }
+
+    @Override
+    public String toString() {
+        return "LaunchScheduler[pending: " + getQueueDepth() + " running: " + getRunningCount() + " wait: " + _waitTime + "]";
+    }
+
+    /**
+     * Queued launch request
+     */
+    static final class LaunchRequest implements Comparable<LaunchRequest> {
+
+        /** client stub to launch */
+        final ClientStub stub;
+        /** launch priority */
+        final Priority priority;
+        /** submission order */
+        final long sequence;
+        /** submission time (nanoseconds) */
+        final long time;
+
+        /**
+         * Constructor
+         * @param stub client stub to launch
+         * @param priority launch priority
+         * @param sequence submission order
+         * @param time submission time (nanoseconds)
+         */
+        LaunchRequest(final ClientStub stub, final Priority priority, final long sequence, final long time) {
+            this.stub = stub;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.time = time;
+        }
+
+        @Override
+        public int compareTo(final LaunchRequest other) {
+            final int cmp = priority.compareTo(other.priority);
+            if (cmp != 0) {
+                return cmp;
+            }
+            return (sequence < other.sequence) ? -1 : ((sequence == other.sequence) ? 0 : 1);
+        }
+    }
+}
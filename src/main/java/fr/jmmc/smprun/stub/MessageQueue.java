@@ -0,0 +1,562 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun.stub;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.astrogrid.samp.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded thread-safe queue (array-backed ring) of the SAMP messages waiting for the real application.
+ * When the queue is full, the overflow policy decides which message is discarded.
+ *
+ * Messages equal to a queued one (same mType and normalized parameters) within the de-duplication window are discarded
+ * and messages older than the time-to-live of their mType are expired instead of being returned.
+ *
+ * Message parameters larger than the spill threshold are moved to private temporary files while queued (only a file
+ * handle stays in the heap) and read back when the message is returned.
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+public final class MessageQueue {
+
+    /** Class logger */
+    private static final Logger _logger = LoggerFactory.getLogger(MessageQueue.class.getName());
+    /** spill directory name (private directory) */
+    private static final String SPILL_DIR_NAME = "spill";
+    /** spill file prefix */
+    private static final String SPILL_FILE_PREFIX = "param.";
+    /** spill file suffix */
+    private static final String SPILL_FILE_SUFFIX = ".bin";
+    /** spill directory (guarded by the class) */
+    private static File _spillDirectory = null;
+    /** true if the spill directory is not available (guarded by the class) */
+    private static boolean _spillDisabled = false;
+
+    /**
+     * Overflow policies
+     */
+    public enum OverflowPolicy {
+
+        /** discard the oldest queued message */
+        DROP_OLDEST,
+        /** discard the incoming message */
+        DROP_NEWEST,
+        /** replace the latest queued message having the same mType (drop oldest if none) */
+        COALESCE_BY_MTYPE;
+
+        /**
+         * Parse the given policy name
+         * @param name policy name (may be null)
+         * @param defaultPolicy policy returned if the given name is invalid
+         * @return overflow policy
+         */
+        public static OverflowPolicy parse(final String name, final OverflowPolicy defaultPolicy) {
+            if (name != null) {
+                try {
+                    return valueOf(name.trim().toUpperCase());
+                } catch (IllegalArgumentException iae) {
+                    // use default
+                }
+            }
+            return defaultPolicy;
+        }
+    }
+    /* members */
+    /** ring buffer */
+    private final Entry[] _ring;
+    /** overflow policy */
+    private final OverflowPolicy _policy;
+    /** de-duplication window in nanoseconds (0 to disable) */
+    private final long _dedupWindow;
+    /** time-to-live in milliseconds keyed by mType (0 means no expiry) */
+    private final Map<String, Long> _ttlByMType;
+    /** default time-to-live in milliseconds (0 means no expiry) */
+    private final long _defaultTtl;
+    /** parameter size in bytes above which parameters are spilled to files (0 to disable) */
+    private final long _spillThreshold;
+    /** message counters */
+    private final StubMetrics _metrics;
+    /** index of the oldest message (guarded by this) */
+    private int _head = 0;
+    /** number of queued messages (guarded by this) */
+    private int _size = 0;
+
+    /**
+     * Constructor (no de-duplication nor expiry)
+     *
+     * @param capacity maximum number of queued messages
+     * @param policy overflow policy
+     * @param metrics message counters to update
+     */
+    public MessageQueue(final int capacity, final OverflowPolicy policy, final StubMetrics metrics) {
+        this(capacity, policy, 0L, Collections.<String, Long>emptyMap(), 0L, 0L, metrics);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param capacity maximum number of queued messages
+     * @param policy overflow policy
+     * @param dedupWindow de-duplication window in milliseconds (0 to disable)
+     * @param ttlByMType time-to-live in milliseconds keyed by mType (0 means no expiry)
+     * @param defaultTtl default time-to-live in milliseconds (0 means no expiry)
+     * @param spillThreshold parameter size in bytes above which parameters are spilled to files (0 to disable)
+     * @param metrics message counters to update
+     */
+    public MessageQueue(final int capacity, final OverflowPolicy policy, final long dedupWindow,
+                        final Map<String, Long> ttlByMType, final long defaultTtl, final long spillThreshold,
+                        final StubMetrics metrics) {
+        _ring = new Entry[Math.max(1, capacity)];
+        _policy = policy;
+        _dedupWindow = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, dedupWindow));
+        _ttlByMType = ttlByMType;
+        _defaultTtl = Math.max(0L, defaultTtl);
+        _spillThreshold = Math.max(0L, spillThreshold);
+        _metrics = metrics;
+    }
+
+    /**
+     * Queue the given message, applying the overflow policy if the queue is full
+     *
+     * @param message message to queue
+     * @return true if the given message was queued, false if it was discarded (duplicate or overflow)
+     */
+    public boolean offer(final Message message) {
+        return offer(message, System.currentTimeMillis());
+    }
+
+    /**
+     * Queue the given message received at the given time (restored message), applying the overflow policy if the queue
+     * is full: its age counts for its time-to-live so it expires if received too long ago
+     *
+     * @param message message to queue
+     * @param receiveTime receive time (epoch milliseconds)
+     * @return true if the given message was queued, false if it was discarded (duplicate or overflow)
+     */
+    public boolean offer(final Message message, final long receiveTime) {
+        final String key = (_dedupWindow != 0L) ? normalize(message) : null;
+        final long age = Math.max(0L, System.currentTimeMillis() - receiveTime);
+
+        // Spill large parameters outside of the lock:
+        final Entry added = new Entry(message, key, receiveTime, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(age),
+                getTimeToLive(message.getMType()));
+        spill(added);
+
+        if (!offer(added)) {
+            added.release();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Queue the given entry, applying the overflow policy if the queue is full
+     *
+     * @param added entry to queue
+     * @return true if the given entry was queued, false if it was discarded (duplicate or overflow)
+     */
+    private synchronized boolean offer(final Entry added) {
+        final long now = System.nanoTime();
+        expire(now);
+
+        if (added.key != null) {
+            for (int i = 0; i < _size; i++) {
+                final Entry entry = _ring[(_head + i) % _ring.length];
+                if (added.key.equals(entry.key) && (now - entry.time) <= _dedupWindow) {
+                    _metrics.incDuplicated();
+                    return false;
+                }
+            }
+        }
+
+        if (_size == _ring.length) {
+            _metrics.incDropped();
+
+            switch (_policy) {
+                case DROP_NEWEST:
+                    return false;
+                case COALESCE_BY_MTYPE:
+                    if (replaceLatest(added)) {
+                        _metrics.incEnqueued();
+                        return true;
+                    }
+                    // no message with the same mType: drop the oldest one
+                    removeHead().release();
+                    break;
+                case DROP_OLDEST:
+                default:
+                    removeHead().release();
+            }
+        }
+        _ring[(_head + _size) % _ring.length] = added;
+        _size++;
+        _metrics.incEnqueued();
+        return true;
+    }
+
+    /**
+     * Remove and return the oldest message (expired messages are skipped)
+     *
+     * @return oldest message or null if empty
+     */
+    public synchronized Message poll() {
+        expire(System.nanoTime());
+        if (_size == 0) {
+            return null;
+        }
+        final Entry entry = removeHead();
+        final Message message = entry.restore();
+        entry.release();
+        return message;
+    }
+
+    /**
+     * @return number of queued messages
+     */
+    public synchronized int size() {
+        return _size;
+    }
+
+    /**
+     * @return true if no message is queued
+     */
+    public synchronized boolean isEmpty() {
+        return _size == 0;
+    }
+
+    /**
+     * @return mTypes of the queued messages
+     */
+    public synchronized Set<String> mTypes() {
+        final Set<String> mTypes = new HashSet<String>(8);
+        for (int i = 0; i < _size; i++) {
+            mTypes.add(_ring[(_head + i) % _ring.length].message.getMType());
+        }
+        return mTypes;
+    }
+
+    /**
+     * @return copy of the queued messages with their receive time (oldest first)
+     */
+    public synchronized List<MessageSpool.Record> records() {
+        expire(System.nanoTime());
+        final List<MessageSpool.Record> records = new ArrayList<MessageSpool.Record>(_size);
+        for (int i = 0; i < _size; i++) {
+            final Entry entry = _ring[(_head + i) % _ring.length];
+            records.add(new MessageSpool.Record(entry.restore(), entry.received));
+        }
+        return records;
+    }
+
+    /**
+     * Remove all queued messages
+     *
+     * @return removed messages (oldest first) without their spilled parameters
+     */
+    public synchronized List<Message> clear() {
+        final List<Message> messages = new ArrayList<Message>(_size);
+        for (int i = 0; i < _size; i++) {
+            messages.add(_ring[(_head + i) % _ring.length].message);
+        }
+        for (int i = 0; i < _ring.length; i++) {
+            if (_ring[i] != null) {
+                _ring[i].release();
+                _ring[i] = null;
+            }
+        }
+        _head = 0;
+        _size = 0;
+        return messages;
+    }
+
+    /**
+     * Replace the latest queued entry having the same mType as the given entry (must be called while holding this lock)
+     *
+     * @param added entry to queue
+     * @return true if an entry was replaced, false if no entry has the same mType
+     */
+    private boolean replaceLatest(final Entry added) {
+        for (int i = _size - 1; i >= 0; i--) {
+            final int index = (_head + i) % _ring.length;
+            if (_ring[index].message.getMType().equals(added.message.getMType())) {
+                _ring[index].release();
+                _ring[index] = added;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remove the oldest entry (queue not empty)
+     *
+     * @return removed entry
+     */
+    private Entry removeHead() {
+        final Entry entry = _ring[_head];
+        _ring[_head] = null;
+        _head = (_head + 1) % _ring.length;
+        _size--;
+        return entry;
+    }
+
+    /**
+     * Remove expired entries (time-to-live elapsed)
+     *
+     * @param now current time (nano time)
+     */
+    private void expire(final long now) {
+        int expired = 0;
+        for (int i = 0; i < _size; ) {
+            final int index = (_head + i) % _ring.length;
+            final Entry entry = _ring[index];
+            if (entry.ttl != 0L && (now - entry.time) > entry.ttl) {
+                entry.release();
+                // shift following entries:
+                for (int j = i; j < _size - 1; j++) {
+                    _ring[(_head + j) % _ring.length] = _ring[(_head + j + 1) % _ring.length];
+                }
+                _ring[(_head + _size - 1) % _ring.length] = null;
+                _size--;
+                expired++;
+            } else {
+                i++;
+            }
+        }
+        if (expired != 0) {
+            _metrics.addExpired(expired);
+        }
+    }
+
+    /**
+     * Move the parameters of the given entry larger than the spill threshold to private temporary files
+     *
+     * @param entry entry to spill
+     */
+    private void spill(final Entry entry) {
+        final Map<?, ?> params = entry.message.getParams();
+        if (_spillThreshold == 0L || params == null) {
+            return;
+        }
+        Map<Object, Object> kept = null;
+        for (Map.Entry<?, ?> param : params.entrySet()) {
+            if (SampValueCodec.estimateSize(param.getValue()) > _spillThreshold) {
+                final File dir = getSpillDirectory();
+                if (dir == null) {
+                    return;
+                }
+                try {
+                    final File file = PrivateFiles.createTempFile(dir, SPILL_FILE_PREFIX, SPILL_FILE_SUFFIX);
+                    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(PrivateFiles.newOutputStream(file, false), 64 * 1024));
+                    try {
+                        SampValueCodec.writeValue(out, param.getValue());
+                    } finally {
+                        out.close();
+                    }
+                    if (kept == null) {
+                        kept = new HashMap<Object, Object>(params);
+                        entry.spilled = new HashMap<String, File>(4);
+                    }
+                    kept.remove(param.getKey());
+                    entry.spilled.put(String.valueOf(param.getKey()), file);
+                } catch (IOException ioe) {
+                    _logger.warn("Unable to spill parameter '{}': kept in memory.", param.getKey(), ioe);
+                }
+            }
+        }
+        if (kept != null) {
+            _logger.debug("Spilled parameters {} of '{}' message.", entry.spilled.keySet(), entry.message.getMType());
+            entry.message = new Message(entry.message.getMType(), kept);
+        }
+    }
+
+    /**
+     * Return the private spill directory (spill files of a previous session are deleted on first use)
+     *
+     * @return spill directory or null if not available
+     */
+    private static File getSpillDirectory() {
+        synchronized (MessageQueue.class) {
+            if (_spillDirectory == null && !_spillDisabled) {
+                try {
+                    final File dir = PrivateFiles.getDirectory(SPILL_DIR_NAME);
+                    final File[] files = dir.listFiles();
+                    if (files != null) {
+                        for (File file : files) {
+                            if (file.getName().startsWith(SPILL_FILE_PREFIX) && !file.delete()) {
+                                _logger.debug("Unable to delete spilled parameter '{}'.", file);
+                            }
+                        }
+                    }
+                    _spillDirectory = dir;
+                } catch (IOException ioe) {
+                    _logger.warn("Parameter spilling disabled:", ioe);
+                    _spillDisabled = true;
+                }
+            }
+            return _spillDirectory;
+        }
+    }
+
+    /**
+     * Return the time-to-live of the given mType
+     *
+     * @param mType message type
+     * @return time-to-live in nanoseconds (0 means no expiry)
+     */
+    private long getTimeToLive(final String mType) {
+        final Long ttl = _ttlByMType.get(mType);
+        return TimeUnit.MILLISECONDS.toNanos((ttl != null) ? ttl.longValue() : _defaultTtl);
+    }
+
+    /**
+     * Return the de-duplication key of the given message: mType and its parameters
+     * (map keys sorted, string values trimmed)
+     *
+     * @param message message
+     * @return de-duplication key
+     */
+    static String normalize(final Message message) {
+        final StringBuilder sb = new StringBuilder(128);
+        sb.append(message.getMType()).append('|');
+        normalize(message.getParams(), sb);
+        return sb.toString();
+    }
+
+    /**
+     * Append the normalized form of the given SAMP value
+     *
+     * @param value SAMP value (string, list or map)
+     * @param sb buffer
+     */
+    private static void normalize(final Object value, final StringBuilder sb) {
+        if (value instanceof Map) {
+            final Map<String, Object> sorted = new TreeMap<String, Object>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                sorted.put(String.valueOf(entry.getKey()), entry.getValue());
+            }
+            sb.append('{');
+            for (Map.Entry<String, Object> entry : sorted.entrySet()) {
+                sb.append(entry.getKey()).append('=');
+                normalize(entry.getValue(), sb);
+                sb.append(';');
+            }
+            sb.append('}');
+        } else if (value instanceof List) {
+            sb.append('[');
+            for (Object item : (List<?>) value) {
+                normalize(item, sb);
+                sb.append(',');
+            }
+            sb.append(']');
+        } else if (value != null) {
+            sb.append(value.toString().trim());
+        }
+    }
+
+    /**
+     * Queued message with its enqueue time and time-to-live
+     */
+    private static final class Entry {
+
+        /** message (without its spilled parameters) */
+        Message message;
+        /** spilled parameter files keyed by parameter name (null if none) */
+        Map<String, File> spilled = null;
+        /** de-duplication key (null if disabled) */
+        final String key;
+        /** receive time (epoch milliseconds) */
+        final long received;
+        /** enqueue time (nano time) */
+        final long time;
+        /** time-to-live in nanoseconds (0 means no expiry) */
+        final long ttl;
+
+        /**
+         * Constructor
+         *
+         * @param message message
+         * @param key de-duplication key
+         * @param received receive time (epoch milliseconds)
+         * @param time enqueue time (nano time)
+         * @param ttl time-to-live in nanoseconds
+         */
+        Entry(final Message message, final String key, final long received, final long time, final long ttl) {
+            this.message = message;
+            this.key = key;
+            this.received = received;
+            this.time = time;
+            this.ttl = ttl;
+        }
+
+        /**
+         * Return the complete message, reading spilled parameters back
+         *
+         * @return complete message
+         */
+        Message restore() {
+            if (spilled == null) {
+                return message;
+            }
+            // JSAMP returns a raw map:
+            @SuppressWarnings("unchecked")
+            final Map<Object, Object> keptParams = message.getParams();
+            final Map<Object, Object> params = new HashMap<Object, Object>(keptParams);
+            for (Map.Entry<String, File> param : spilled.entrySet()) {
+                try {
+                    params.put(param.getKey(), SampValueCodec.readValue(ByteBuffer.wrap(Files.readAllBytes(param.getValue().toPath()))));
+                } catch (IOException ioe) {
+                    _logger.error("Unable to read spilled parameter '{}' of '{}' message:", param.getKey(), message.getMType(), ioe);
+                }
+            }
+            return new Message(message.getMType(), params);
+        }
+
+        /**
+         * Delete spilled parameter files
+         */
+        void release() {
+            if (spilled != null) {
+                for (File file : spilled.values()) {
+                    if (!file.delete()) {
+                        _logger.debug("Unable to delete spilled parameter '{}'.", file);
+                    }
+                }
+                spilled = null;
+            }
+        }
+    }
+}
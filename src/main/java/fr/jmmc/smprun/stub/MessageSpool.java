@@ -0,0 +1,342 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun.stub;
+
+import fr.jmmc.jmcs.util.FileUtils;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.astrogrid.samp.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Crash-safe append-only spool of the SAMP messages waiting for the real application (one file per stub, stored in the
+ * per-user private directory).
+ *
+ * Each queued message is appended with its receive time and forced to disk; the spool is read back on later starts
+ * (a truncated last record due to a crash is ignored) and compacted once messages are delivered.
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+public final class MessageSpool {
+
+    /** Class logger */
+    private static final Logger _logger = LoggerFactory.getLogger(MessageSpool.class.getName());
+    /** file magic number */
+    private static final int MAGIC = 0x534D5053; // 'SMPS'
+    /** file format version (increment whenever the layout changes) */
+    private static final int FORMAT_VERSION = 2;
+    /** spool directory name (private directory) */
+    private static final String SPOOL_DIR_NAME = "spool";
+    /** spool file name suffix */
+    private static final String SPOOL_FILE_SUFFIX = ".spool";
+    /* members */
+    /** spool file (null if the private directory is not available) */
+    private final File _file;
+
+    /**
+     * Spooled message with its receive time
+     */
+    public static final class Record {
+
+        /** message */
+        private final Message _message;
+        /** receive time (epoch milliseconds) */
+        private final long _receiveTime;
+
+        /**
+         * Constructor
+         *
+         * @param message message
+         * @param receiveTime receive time (epoch milliseconds)
+         */
+        public Record(final Message message, final long receiveTime) {
+            _message = message;
+            _receiveTime = receiveTime;
+        }
+
+        /**
+         * @return message
+         */
+        public Message getMessage() {
+            return _message;
+        }
+
+        /**
+         * @return receive time (epoch milliseconds)
+         */
+        public long getReceiveTime() {
+            return _receiveTime;
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param applicationName application name
+     */
+    public MessageSpool(final String applicationName) {
+        this(getSpoolFile(applicationName));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param file spool file (null to disable spooling)
+     */
+    MessageSpool(final File file) {
+        _file = file;
+    }
+
+    /**
+     * Return true if messages are spooled for the given application (spool file present)
+     *
+     * @param applicationName application name
+     * @return true if the spool file of the given application exists
+     */
+    public static boolean exists(final String applicationName) {
+        final File file = getSpoolFile(applicationName);
+        return file != null && file.isFile();
+    }
+
+    /**
+     * Return the spool file of the given application
+     *
+     * @param applicationName application name
+     * @return spool file or null if the private directory is not available
+     */
+    private static File getSpoolFile(final String applicationName) {
+        try {
+            return new File(PrivateFiles.getDirectory(SPOOL_DIR_NAME), FileUtils.cleanupFileName(applicationName) + SPOOL_FILE_SUFFIX);
+        } catch (IOException ioe) {
+            _logger.warn("Message spool disabled:", ioe);
+        }
+        return null;
+    }
+
+    /**
+     * Read the spooled messages
+     *
+     * @return spooled messages (oldest first) or an empty list if none
+     */
+    public synchronized List<Record> load() {
+        if (_file == null || !_file.exists()) {
+            return Collections.emptyList();
+        }
+        if (!PrivateFiles.isPrivateFile(_file)) {
+            _logger.warn("Ignoring message spool '{}' (not a regular file owned by the user).", _file);
+            return Collections.emptyList();
+        }
+        final List<Record> records = new ArrayList<Record>();
+        boolean damaged = false;
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(_file.toPath()));
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                _logger.info("Invalid message spool '{}': ignored.", _file);
+                damaged = true;
+                return records;
+            }
+            while (buffer.remaining() >= 4) {
+                final int length = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    _logger.info("Truncated record in message spool '{}': ignored.", _file);
+                    damaged = true;
+                    break;
+                }
+                final ByteBuffer record = buffer.slice();
+                record.limit(length);
+                buffer.position(buffer.position() + length);
+
+                records.add(readRecord(record));
+            }
+        } catch (IOException ioe) {
+            _logger.info("Unable to read the message spool '{}':", _file, ioe);
+        } catch (BufferUnderflowException bue) {
+            _logger.info("Truncated message spool '{}'.", _file);
+            damaged = true;
+        } catch (IllegalArgumentException iae) {
+            _logger.info("Invalid message spool '{}':", _file, iae);
+            damaged = true;
+        } finally {
+            if (damaged) {
+                // Rewrite valid records only so that later appends remain readable:
+                compact(records);
+            }
+        }
+        if (!records.isEmpty()) {
+            _logger.info("Read {} message(s) from message spool '{}'.", records.size(), _file);
+        }
+        return records;
+    }
+
+    /**
+     * Append the given message and force it to disk
+     *
+     * @param message message to append
+     * @param receiveTime receive time (epoch milliseconds)
+     */
+    public synchronized void append(final Message message, final long receiveTime) {
+        if (_file == null) {
+            return;
+        }
+        try {
+            final FileChannel channel = PrivateFiles.newChannel(_file, true);
+            try {
+                if (channel.size() == 0L) {
+                    writeHeader(channel);
+                }
+                writeRecord(channel, message, receiveTime);
+                channel.force(false);
+            } finally {
+                channel.close();
+            }
+        } catch (IOException ioe) {
+            _logger.warn("Unable to write the message spool '{}':", _file, ioe);
+        } catch (IllegalArgumentException iae) {
+            _logger.warn("Unable to spool message '{}':", message, iae);
+        }
+    }
+
+    /**
+     * Compact the spool to only keep the given remaining messages (delete it if none):
+     * remaining messages are written into a temporary file replacing the spool
+     *
+     * @param remaining messages not delivered yet
+     */
+    public synchronized void compact(final List<Record> remaining) {
+        if (_file == null) {
+            return;
+        }
+        if (remaining.isEmpty()) {
+            if (_file.exists() && !_file.delete()) {
+                _logger.warn("Unable to delete the message spool '{}'.", _file);
+            }
+            return;
+        }
+        final File tmpFile = new File(_file.getParentFile(), _file.getName() + ".tmp");
+        try {
+            final FileChannel channel = PrivateFiles.newChannel(tmpFile, false);
+            try {
+                writeHeader(channel);
+                for (Record record : remaining) {
+                    try {
+                        writeRecord(channel, record.getMessage(), record.getReceiveTime());
+                    } catch (IllegalArgumentException iae) {
+                        _logger.warn("Unable to spool message '{}':", record.getMessage(), iae);
+                    }
+                }
+                channel.force(false);
+            } finally {
+                channel.close();
+            }
+            PrivateFiles.replace(tmpFile, _file);
+            _logger.debug("Compacted message spool '{}': {} message(s) left.", _file, remaining.size());
+        } catch (IOException ioe) {
+            _logger.warn("Unable to compact the message spool '{}':", _file, ioe);
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Write the file header
+     *
+     * @param channel channel to write
+     * @throws IOException if an I/O error occurred
+     */
+    private static void writeHeader(final FileChannel channel) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(8);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).flip();
+        writeFully(channel, header);
+    }
+
+    /**
+     * Write one record (length prefixed)
+     *
+     * @param channel channel to write
+     * @param message message to write
+     * @param receiveTime receive time (epoch milliseconds)
+     * @throws IOException if an I/O error occurred
+     */
+    private static void writeRecord(final FileChannel channel, final Message message, final long receiveTime) throws IOException {
+        final byte[] record = encode(message, receiveTime);
+        final ByteBuffer buffer = ByteBuffer.allocate(4 + record.length);
+        buffer.putInt(record.length).put(record).flip();
+        writeFully(channel, buffer);
+    }
+
+    /**
+     * Write the given buffer completely
+     *
+     * @param channel channel to write
+     * @param buffer buffer to write
+     * @throws IOException if an I/O error occurred
+     */
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Encode the given message (receive time, mType and parameters)
+     *
+     * @param message message to encode
+     * @param receiveTime receive time (epoch milliseconds)
+     * @return encoded bytes
+     * @throws IOException if an I/O error occurred
+     */
+    static byte[] encode(final Message message, final long receiveTime) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(receiveTime);
+        SampValueCodec.writeString(out, message.getMType());
+        SampValueCodec.writeValue(out, message.getParams());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode one record
+     *
+     * @param buffer buffer to read
+     * @return spooled message
+     */
+    @SuppressWarnings("unchecked")
+    static Record readRecord(final ByteBuffer buffer) {
+        final long receiveTime = buffer.getLong();
+        final String mType = SampValueCodec.readString(buffer);
+        final Object params = SampValueCodec.readValue(buffer);
+        if (!(params instanceof Map)) {
+            throw new IllegalArgumentException("Invalid message parameters for mType '" + mType + "'");
+        }
+        return new Record(new Message(mType, (Map<Object, Object>) params), receiveTime);
+    }
+}
@@ -0,0 +1,423 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun.stub;
+
+import fr.jmmc.jmcs.util.FileUtils;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.astrogrid.samp.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Size-bounded local cache of message payloads (url parameter of *.load.* messages) prefetched while the real
+ * application is launching, stored in the per-user private directory.
+ * Space is reserved while downloading so that concurrent downloads respect the maximum size; cached files are evicted
+ * in least-recently-used order unless pinned by a message being forwarded. Forwarded messages are rewritten to use the
+ * local file: URL (keeping the original file name and extension).
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+public final class PayloadCache {
+
+    /** Class logger */
+    private static final Logger _logger = LoggerFactory.getLogger(PayloadCache.class.getName());
+    /** SAMP url parameter */
+    public static final String URL_PARAM = "url";
+    /** cache directory name (private directory) */
+    private static final String CACHE_DIR_NAME = "payloads";
+    /** mType part of the messages loading a payload (table.load.votable, image.load.fits ...) */
+    private static final String LOAD_MTYPE_PART = ".load.";
+    /** number of digest characters prefixing cached file names */
+    private static final int DIGEST_PREFIX_LENGTH = 12;
+    /** maximum length of the original file name kept in cached file names */
+    private static final int MAX_NAME_LENGTH = 96;
+    /** connect / read timeout in milliseconds */
+    private static final int NETWORK_TIMEOUT = 30 * 1000;
+    /** copy buffer size */
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /** space reserved at once when the payload length is unknown */
+    private static final long RESERVE_CHUNK = 1024L * 1024L;
+    /** singleton */
+    private static PayloadCache _instance = null;
+    /* members */
+    /** cache directory (null if disabled) */
+    private final File _directory;
+    /** maximum cache size in bytes */
+    private final long _maxSize;
+    /** download executor */
+    private final ExecutorService _executor;
+    /** cached payloads keyed by URL in access order (guarded by this) */
+    private final LinkedHashMap<String, Entry> _entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    /** total size in bytes of the downloaded and reserved payloads (guarded by this) */
+    private long _size = 0L;
+
+    /**
+     * Return the singleton instance
+     *
+     * @param maxSize maximum cache size in bytes (used on first call only)
+     * @return singleton instance
+     */
+    public static synchronized PayloadCache getInstance(final long maxSize) {
+        if (_instance == null) {
+            File directory = null;
+            try {
+                directory = PrivateFiles.getDirectory(CACHE_DIR_NAME);
+            } catch (IOException ioe) {
+                _logger.warn("Payload cache disabled:", ioe);
+            }
+            _instance = new PayloadCache(directory, maxSize);
+        }
+        return _instance;
+    }
+
+    /**
+     * Private constructor
+     *
+     * @param directory cache directory (null to disable the cache)
+     * @param maxSize maximum cache size in bytes
+     */
+    private PayloadCache(final File directory, final long maxSize) {
+        _directory = directory;
+        _maxSize = maxSize;
+
+        // Payloads of a previous session are not reused:
+        if (_directory != null) {
+            final File[] files = _directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    deleteFile(file);
+                }
+            }
+        }
+
+        _executor = Executors.newFixedThreadPool(2, new ThreadFactory() {
+            /** thread counter */
+            private final AtomicInteger _count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "PayloadPrefetcher-" + _count.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Start downloading the payload of the given message (url parameter using http, https or ftp) if not cached yet
+     *
+     * @param message received message
+     */
+    public void prefetch(final Message message) {
+        final String url = getRemoteUrl(message);
+        if (url == null || _directory == null) {
+            return;
+        }
+        final Entry entry;
+        synchronized (this) {
+            if (_entries.containsKey(url)) {
+                return;
+            }
+            entry = new Entry(new File(_directory, getFileName(url)));
+            _entries.put(url, entry);
+        }
+        _logger.info("Prefetching '{}' ...", url);
+
+        _executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                download(url, entry);
+            }
+        });
+    }
+
+    /**
+     * Return the given message using the local copy of its payload if downloaded, the given message otherwise.
+     * The local copy is pinned (never evicted) until released.
+     *
+     * @see #release(Message)
+     *
+     * @param message message to forward
+     * @return message to forward
+     */
+    public Message rewrite(final Message message) {
+        final String url = getRemoteUrl(message);
+        if (url == null) {
+            return message;
+        }
+        final Entry entry;
+        synchronized (this) {
+            entry = _entries.get(url); // touch (LRU)
+            if (entry == null || !entry.future.isDone() || entry.future.isCompletedExceptionally()) {
+                _logger.info("Payload '{}' not prefetched: forwarding original URL.", url);
+                return message;
+            }
+            entry.pins++;
+        }
+        // JSAMP returns a raw map:
+        @SuppressWarnings("unchecked")
+        final Map<Object, Object> originalParams = message.getParams();
+        final Map<Object, Object> params = new HashMap<Object, Object>(originalParams);
+        params.put(URL_PARAM, entry.file.toURI().toString());
+
+        _logger.info("Payload '{}' prefetched: forwarding '{}'.", url, params.get(URL_PARAM));
+        return new Message(message.getMType(), params);
+    }
+
+    /**
+     * Release the local copy of the payload of the given message (once forwarded) so that it can be evicted
+     *
+     * @param message original message (not rewritten)
+     */
+    public void release(final Message message) {
+        final String url = getRemoteUrl(message);
+        if (url == null) {
+            return;
+        }
+        synchronized (this) {
+            final Entry entry = _entries.get(url);
+            if (entry != null && entry.pins > 0) {
+                entry.pins--;
+                evict(null);
+            }
+        }
+    }
+
+    /**
+     * Download the given URL into the given entry file, reserving space in the cache while downloading
+     *
+     * @param url remote URL
+     * @param entry cache entry
+     */
+    private void download(final String url, final Entry entry) {
+        final long start = System.nanoTime();
+        long length = 0L;
+        try {
+            final URLConnection connection = new URL(url).openConnection();
+            connection.setConnectTimeout(NETWORK_TIMEOUT);
+            connection.setReadTimeout(NETWORK_TIMEOUT);
+
+            final long contentLength = connection.getContentLengthLong();
+            if (contentLength > 0L) {
+                reserve(entry, contentLength);
+            }
+            final InputStream in = connection.getInputStream();
+            try {
+                final OutputStream out = PrivateFiles.newOutputStream(entry.file, false);
+                try {
+                    final byte[] buffer = new byte[BUFFER_SIZE];
+                    int n;
+                    while ((n = in.read(buffer)) != -1) {
+                        length += n;
+                        if (length > entry.size) {
+                            reserve(entry, Math.max(length - entry.size, RESERVE_CHUNK));
+                        }
+                        out.write(buffer, 0, n);
+                    }
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException ioe) {
+            _logger.info("Unable to prefetch '{}': {}", url, ioe.getMessage());
+            synchronized (this) {
+                _entries.remove(url);
+                _size -= entry.size;
+                entry.size = 0L;
+            }
+            deleteFile(entry.file);
+            entry.future.completeExceptionally(ioe);
+            return;
+        }
+
+        _logger.info("Prefetched '{}' ({} bytes) in {} ms.", url, length, (System.nanoTime() - start) / 1000000L);
+
+        synchronized (this) {
+            // give back the unused reserved space:
+            _size -= entry.size - length;
+            entry.size = length;
+        }
+        entry.future.complete(entry.file);
+    }
+
+    /**
+     * Reserve space for the given entry, evicting least recently used payloads if needed
+     *
+     * @param entry cache entry being downloaded
+     * @param bytes number of bytes to reserve
+     * @throws IOException if the space can not be reserved (payload too large)
+     */
+    private synchronized void reserve(final Entry entry, final long bytes) throws IOException {
+        _size += bytes;
+        entry.size += bytes;
+        evict(entry);
+        if (_size > _maxSize) {
+            _size -= bytes;
+            entry.size -= bytes;
+            throw new IOException("Payload too large: cache full (" + _maxSize + " bytes)");
+        }
+    }
+
+    /**
+     * Evict least recently used payloads (downloaded and not pinned) until the cache size is below its maximum
+     * (guarded by this)
+     *
+     * @param keep entry to keep (may be null)
+     */
+    private void evict(final Entry keep) {
+        for (Iterator<Entry> it = _entries.values().iterator(); _size > _maxSize && it.hasNext();) {
+            final Entry entry = it.next();
+            if (entry != keep && entry.pins == 0 && entry.future.isDone()) {
+                it.remove();
+                _size -= entry.size;
+                deleteFile(entry.file);
+            }
+        }
+    }
+
+    /**
+     * Return the remote URL (http, https or ftp) of the given message if it loads a payload (*.load.* mType)
+     *
+     * @param message message
+     * @return remote URL or null
+     */
+    static String getRemoteUrl(final Message message) {
+        final String mType = message.getMType();
+        final Map<?, ?> params = message.getParams();
+        if (mType == null || !mType.contains(LOAD_MTYPE_PART) || params == null) {
+            return null;
+        }
+        final Object value = params.get(URL_PARAM);
+        if (value instanceof String) {
+            final String url = ((String) value).trim();
+            final String lower = url.toLowerCase();
+            if (lower.startsWith("http://") || lower.startsWith("https://") || lower.startsWith("ftp://")) {
+                return url;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the cache file name of the given URL: digest prefix (unique) and original file name (extension kept
+     * so that applications can guess the payload format)
+     *
+     * @param url URL
+     * @return file name
+     */
+    static String getFileName(final String url) {
+        final String digest = digest(url);
+        final String prefix = digest.substring(0, Math.min(DIGEST_PREFIX_LENGTH, digest.length()));
+
+        String name = null;
+        try {
+            final String path = new URI(url).getPath();
+            if (path != null) {
+                name = path.substring(path.lastIndexOf('/') + 1);
+            }
+        } catch (URISyntaxException use) {
+            _logger.debug("Invalid URL '{}':", url, use);
+        }
+        if (name == null || name.isEmpty()) {
+            return prefix;
+        }
+        name = FileUtils.cleanupFileName(name);
+        if (name.length() > MAX_NAME_LENGTH) {
+            name = name.substring(name.length() - MAX_NAME_LENGTH);
+        }
+        return prefix + '_' + name;
+    }
+
+    /**
+     * Return the SHA-1 hex digest of the given URL
+     *
+     * @param url URL
+     * @return hex digest
+     */
+    private static String digest(final String url) {
+        try {
+            final byte[] hash = MessageDigest.getInstance("SHA-1").digest(url.getBytes(Charset.forName("UTF-8")));
+            final StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException nsae) {
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+
+    /**
+     * Delete the given file
+     *
+     * @param file file to delete
+     */
+    private static void deleteFile(final File file) {
+        if (file.exists() && !file.delete()) {
+            _logger.debug("Unable to delete '{}'.", file);
+        }
+    }
+
+    /**
+     * Cached payload
+     */
+    private static final class Entry {
+
+        /** local file */
+        final File file;
+        /** completed once downloaded */
+        final CompletableFuture<File> future = new CompletableFuture<File>();
+        /** payload size or reserved size in bytes (guarded by the cache) */
+        long size = 0L;
+        /** number of messages being forwarded using the local file (guarded by the cache) */
+        int pins = 0;
+
+        /**
+         * Constructor
+         *
+         * @param file local file
+         */
+        Entry(final File file) {
+            this.file = file;
+        }
+    }
+}
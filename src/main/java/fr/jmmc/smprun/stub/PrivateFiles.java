@@ -0,0 +1,222 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun.stub;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Per-user private storage of AppLauncher files (registry cache, message spools, payloads ...):
+ * directories live in the user home, are created with owner-only permissions and are only used if they are
+ * neither symbolic links nor owned by another user (unlike the shared temporary directory).
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+public final class PrivateFiles {
+
+    /** base directory name (in the user home) */
+    private static final String BASE_DIR_NAME = ".fr.jmmc.applauncher";
+    /** do not follow symbolic links */
+    private static final LinkOption[] NO_FOLLOW = new LinkOption[]{LinkOption.NOFOLLOW_LINKS};
+    /** owner-only directory permissions */
+    private static final Set<PosixFilePermission> DIR_PERMISSIONS = PosixFilePermissions.fromString("rwx------");
+    /** owner-only file permissions */
+    private static final Set<PosixFilePermission> FILE_PERMISSIONS = PosixFilePermissions.fromString("rw-------");
+
+    /**
+     * Forbidden constructor
+     */
+    private PrivateFiles() {
+        super();
+    }
+
+    /**
+     * Return the private directory of the given name (created if missing)
+     *
+     * @param name directory name
+     * @return private directory
+     * @throws IOException if the directory can not be created or is not private (symbolic link, foreign owner)
+     */
+    public static File getDirectory(final String name) throws IOException {
+        final Path base = Paths.get(System.getProperty("user.home"), BASE_DIR_NAME);
+        ensurePrivateDirectory(base);
+
+        final Path dir = base.resolve(name);
+        ensurePrivateDirectory(dir);
+        return dir.toFile();
+    }
+
+    /**
+     * Return true if the given file is a regular file (not a symbolic link) owned by the current user
+     *
+     * @param file file to check
+     * @return true if the given file can be trusted
+     */
+    public static boolean isPrivateFile(final File file) {
+        final Path path = file.toPath();
+        if (Files.isSymbolicLink(path) || !Files.isRegularFile(path, NO_FOLLOW)) {
+            return false;
+        }
+        try {
+            checkOwner(path);
+            return true;
+        } catch (IOException ioe) {
+            return false;
+        }
+    }
+
+    /**
+     * Open the given private file for writing (owner-only permissions, symbolic links refused)
+     *
+     * @param file file to write
+     * @param append true to append to the existing content, false to truncate it
+     * @return output stream
+     * @throws IOException if the file can not be opened or is not private
+     */
+    public static OutputStream newOutputStream(final File file, final boolean append) throws IOException {
+        return Channels.newOutputStream(newChannel(file, append));
+    }
+
+    /**
+     * Open the given private file for writing (owner-only permissions, symbolic links refused)
+     *
+     * @param file file to write
+     * @param append true to append to the existing content, false to truncate it
+     * @return file channel (positioned at the end of the file if appending)
+     * @throws IOException if the file can not be opened or is not private
+     */
+    public static FileChannel newChannel(final File file, final boolean append) throws IOException {
+        final Path path = file.toPath();
+
+        final Set<OpenOption> options = new HashSet<OpenOption>(4);
+        options.add(StandardOpenOption.CREATE);
+        options.add(StandardOpenOption.WRITE);
+        options.add(append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+        options.add(LinkOption.NOFOLLOW_LINKS);
+
+        final FileChannel channel = FileChannel.open(path, options, getFileAttributes(path, FILE_PERMISSIONS));
+        try {
+            checkOwner(path);
+        } catch (IOException ioe) {
+            channel.close();
+            throw ioe;
+        }
+        return channel;
+    }
+
+    /**
+     * Create a new empty private file in the given private directory
+     *
+     * @param dir private directory
+     * @param prefix file name prefix
+     * @param suffix file name suffix
+     * @return new file
+     * @throws IOException if the file can not be created
+     */
+    public static File createTempFile(final File dir, final String prefix, final String suffix) throws IOException {
+        return Files.createTempFile(dir.toPath(), prefix, suffix, getFileAttributes(dir.toPath(), FILE_PERMISSIONS)).toFile();
+    }
+
+    /**
+     * Replace the given target file by the given source file
+     *
+     * @param source file to move
+     * @param target file to replace
+     * @throws IOException if the file can not be moved
+     */
+    public static void replace(final File source, final File target) throws IOException {
+        Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Create the given directory (owner-only permissions) if missing and check it is private
+     *
+     * @param dir directory to check
+     * @throws IOException if the directory can not be created or is not private
+     */
+    private static void ensurePrivateDirectory(final Path dir) throws IOException {
+        if (Files.isSymbolicLink(dir)) {
+            throw new IOException("Refusing symbolic link '" + dir + "'.");
+        }
+        if (!Files.exists(dir, NO_FOLLOW)) {
+            try {
+                Files.createDirectory(dir, getFileAttributes(dir.getParent(), DIR_PERMISSIONS));
+            } catch (FileAlreadyExistsException faee) {
+                // concurrently created: checked below
+            }
+        }
+        if (Files.isSymbolicLink(dir) || !Files.isDirectory(dir, NO_FOLLOW)) {
+            throw new IOException("Not a directory '" + dir + "'.");
+        }
+        checkOwner(dir);
+    }
+
+    /**
+     * Check that the given path is owned by the current user (the owner of the user home)
+     *
+     * @param path path to check
+     * @throws IOException if the given path is owned by another user
+     */
+    private static void checkOwner(final Path path) throws IOException {
+        final UserPrincipal owner;
+        final UserPrincipal user;
+        try {
+            owner = Files.getOwner(path, NO_FOLLOW);
+            user = Files.getOwner(Paths.get(System.getProperty("user.home")));
+        } catch (UnsupportedOperationException uoe) {
+            // no owner support (file system): nothing to check
+            return;
+        }
+        if (!owner.equals(user)) {
+            throw new IOException("Refusing '" + path + "' owned by " + owner.getName() + ".");
+        }
+    }
+
+    /**
+     * Return the owner-only permission attributes if supported by the file system of the given path
+     *
+     * @param path path in the file system
+     * @param permissions permissions
+     * @return file attributes (empty if POSIX permissions are not supported)
+     */
+    private static FileAttribute<?>[] getFileAttributes(final Path path, final Set<PosixFilePermission> permissions) {
+        if (path != null && path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            return new FileAttribute<?>[]{PosixFilePermissions.asFileAttribute(permissions)};
+        }
+        return new FileAttribute<?>[0];
+    }
+}
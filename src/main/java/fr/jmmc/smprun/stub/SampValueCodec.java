@@ -0,0 +1,172 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun.stub;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary codec of SAMP values (strings, lists and maps) shared by the message spool and spilled message parameters.
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+final class SampValueCodec {
+
+    /** string encoding */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /** value tag: string */
+    private static final byte TAG_STRING = 'S';
+    /** value tag: list */
+    private static final byte TAG_LIST = 'L';
+    /** value tag: map */
+    private static final byte TAG_MAP = 'M';
+
+    /**
+     * Forbidden constructor
+     */
+    private SampValueCodec() {
+        super();
+    }
+
+    /**
+     * Write one SAMP value (string, list or map)
+     *
+     * @param out output stream
+     * @param value value to write (null written as an empty map)
+     * @throws IOException if an I/O error occurred
+     */
+    static void writeValue(final DataOutputStream out, final Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TAG_MAP);
+            out.writeInt(0);
+        } else if (value instanceof Map) {
+            final Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(TAG_MAP);
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeString(out, String.valueOf(entry.getKey()));
+                writeValue(out, entry.getValue());
+            }
+        } else if (value instanceof List) {
+            final List<?> list = (List<?>) value;
+            out.writeByte(TAG_LIST);
+            out.writeInt(list.size());
+            for (Object item : list) {
+                writeValue(out, item);
+            }
+        } else if (value instanceof String) {
+            out.writeByte(TAG_STRING);
+            writeString(out, (String) value);
+        } else {
+            throw new IllegalArgumentException("Unsupported SAMP value: " + value.getClass());
+        }
+    }
+
+    /**
+     * Read one SAMP value (string, list or map)
+     *
+     * @param buffer buffer to read
+     * @return value
+     */
+    static Object readValue(final ByteBuffer buffer) {
+        final byte tag = buffer.get();
+        switch (tag) {
+            case TAG_STRING:
+                return readString(buffer);
+            case TAG_LIST: {
+                final int size = buffer.getInt();
+                final List<Object> list = new ArrayList<Object>(Math.min(size, buffer.remaining()));
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(buffer));
+                }
+                return list;
+            }
+            case TAG_MAP: {
+                final int size = buffer.getInt();
+                final Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+                for (int i = 0; i < size; i++) {
+                    final String key = readString(buffer);
+                    map.put(key, readValue(buffer));
+                }
+                return map;
+            }
+            default:
+                throw new IllegalArgumentException("Invalid value tag: " + tag);
+        }
+    }
+
+    /**
+     * Write the given string (length-prefixed UTF-8 bytes, null written as empty)
+     *
+     * @param out output stream
+     * @param value string to write
+     * @throws IOException if an I/O error occurred
+     */
+    static void writeString(final DataOutputStream out, final String value) throws IOException {
+        final byte[] bytes = (value == null) ? new byte[0] : value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read one string (length-prefixed UTF-8 bytes)
+     *
+     * @param buffer buffer to read
+     * @return string
+     */
+    static String readString(final ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Estimate the encoded size of the given SAMP value
+     *
+     * @param value SAMP value (string, list or map)
+     * @return estimated size in bytes
+     */
+    static long estimateSize(final Object value) {
+        long size = 5L;
+        if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+            }
+        } else if (value instanceof List) {
+            for (Object item : (List<?>) value) {
+                size += estimateSize(item);
+            }
+        } else if (value != null) {
+            size += value.toString().length();
+        }
+        return size;
+    }
+}
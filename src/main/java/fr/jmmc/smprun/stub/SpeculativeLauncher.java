@@ -0,0 +1,340 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun.stub;
+
+import fr.jmmc.smprsc.data.stub.model.Type;
+import fr.jmmc.smprun.preference.PreferenceKey;
+import fr.jmmc.smprun.preference.Preferences;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Usage-driven predictive pre-launch: if enabled (speculative.launch preference) and started by AppLauncher
+ * (not by the registry tester), every request (intercepted message or dock click) feeds the usage model and
+ * the most likely next JNLP application is launched speculatively (lowest launch priority) when its confidence
+ * reaches the threshold and the resource budget allows it.
+ *
+ * Speculative launches are cancelled as soon as another application is requested (wrong prediction) or once the
+ * timeout elapsed without any request for them, unless their real application already registered on the hub.
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+public final class SpeculativeLauncher {
+
+    /** Class logger */
+    private static final Logger _logger = LoggerFactory.getLogger(SpeculativeLauncher.class.getName());
+    /** delay in seconds before retrying to cancel a launch being started */
+    private static final long CANCEL_RETRY_DELAY = 5L;
+    /** minimum number of recorded transitions before predicting */
+    private static final int MIN_TRANSITIONS = 5;
+    /** one megabyte */
+    private static final long MEGA = 1024L * 1024L;
+    /** singleton */
+    private static final SpeculativeLauncher _instance = new SpeculativeLauncher();
+    /* members */
+    /** AppLauncher shared preferences */
+    private final Preferences _preferences;
+    /** usage model (null until started) */
+    private volatile UsageModel _model = null;
+    /** prediction and timeout executor */
+    private final ScheduledExecutorService _executor;
+    /** JNLP application names (empty until started) */
+    private final Set<String> _names = new HashSet<String>(32);
+    /** created client stubs keyed by application name (live map, null until started) */
+    private Map<String, ClientStub> _clientStubs = null;
+    /** speculative launches in progress (guarded by this) */
+    private final Map<ClientStub, Speculation> _speculations = new IdentityHashMap<ClientStub, Speculation>(4);
+    /** number of correct predictions (guarded by this) */
+    private int _hits = 0;
+    /** number of wrong or expired predictions (guarded by this) */
+    private int _misses = 0;
+
+    /**
+     * @return the singleton instance
+     */
+    public static SpeculativeLauncher getInstance() {
+        return _instance;
+    }
+
+    /**
+     * Constructor (package-private for tests)
+     */
+    SpeculativeLauncher() {
+        _preferences = Preferences.getInstance();
+        _executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, SpeculativeLauncher.class.getSimpleName());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Enable usage recording and predictions for the given applications
+     *
+     * @param descriptors stub descriptors keyed by application name
+     * @param clientStubs created client stubs keyed by application name (live map: stubs are created on first use)
+     */
+    public synchronized void start(final Map<String, StubDescriptor> descriptors, final Map<String, ClientStub> clientStubs) {
+        for (Map.Entry<String, StubDescriptor> entry : descriptors.entrySet()) {
+            // only JNLP launches can be cancelled:
+            if (entry.getValue().getType() == Type.JNLP) {
+                _names.add(entry.getKey());
+            }
+        }
+        _clientStubs = clientStubs;
+        _model = UsageModel.getInstance();
+    }
+
+    /**
+     * Record a request (intercepted message or dock click) for the given stub:
+     * resolve pending speculations then record and predict the next application in background (if enabled)
+     *
+     * @param stub requested client stub
+     */
+    void requested(final ClientStub stub) {
+        final String name = stub.getApplicationName();
+
+        final List<ClientStub> wrong = new ArrayList<ClientStub>(2);
+        synchronized (this) {
+            for (Iterator<Map.Entry<ClientStub, Speculation>> it = _speculations.entrySet().iterator(); it.hasNext();) {
+                final Map.Entry<ClientStub, Speculation> entry = it.next();
+                final Speculation speculation = entry.getValue();
+
+                if (entry.getKey() == stub) {
+                    _hits++;
+                    _logger.info("Speculative launch of '{}' hit (predicted after '{}').", name, speculation.sourceName);
+                    speculation.timeout.cancel(false);
+                    it.remove();
+                } else if (!speculation.sourceName.equals(name)) {
+                    // another application requested: wrong prediction
+                    _misses++;
+                    speculation.timeout.cancel(false);
+                    wrong.add(entry.getKey());
+                    it.remove();
+                }
+            }
+        }
+        for (ClientStub speculative : wrong) {
+            cancel(speculative, "another application requested");
+        }
+
+        final UsageModel model = _model;
+        if (model != null && _preferences.getPreferenceAsBoolean(PreferenceKey.SPECULATIVE_LAUNCH)) {
+            model.recordRequest(name);
+
+            _executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    predict(model, name);
+                }
+            });
+        }
+    }
+
+    /**
+     * Launch the most likely application after the given one if confident enough and within the resource budget
+     *
+     * @param model usage model
+     * @param name requested application name
+     */
+    private void predict(final UsageModel model, final String name) {
+        if (model.getTransitionCount(name) < MIN_TRANSITIONS) {
+            return;
+        }
+        final String nextName = model.predictNext(name);
+        if (nextName == null) {
+            return;
+        }
+        final double confidence = model.getConfidence(name, nextName);
+        final double threshold = _preferences.getPreferenceAsInt(PreferenceKey.SPECULATIVE_LAUNCH_THRESHOLD) / 100.0;
+        if (confidence < threshold) {
+            _logger.debug("'{}' predicted after '{}' with low confidence ({}).", nextName, name, confidence);
+            return;
+        }
+
+        final LaunchScheduler scheduler = LaunchScheduler.getInstance();
+        final ClientStub stub;
+        synchronized (this) {
+            // only stubs created and listening to the hub (i.e. real application not running):
+            stub = _names.contains(nextName) ? _clientStubs.get(nextName) : null;
+            if (stub == null || _speculations.containsKey(stub)
+                    || _speculations.size() >= _preferences.getPreferenceAsInt(PreferenceKey.SPECULATIVE_LAUNCH_BUDGET)) {
+                return;
+            }
+            // resource budget: only when no launch is pending and enough free memory remains
+            final long freeMemory = LaunchScheduler.getFreePhysicalMemory();
+            if (stub.getState() != ClientStubState.LISTENING || stub.isStandby() || scheduler.isScheduled(stub)
+                    || scheduler.getQueueDepth() != 0
+                    || (freeMemory >= 0L && freeMemory < 2L * MEGA * _preferences.getPreferenceAsInt(PreferenceKey.LAUNCH_MEMORY_PER_APPLICATION))) {
+                return;
+            }
+
+            speculate(stub, name, _preferences.getPreferenceAsInt(PreferenceKey.SPECULATIVE_LAUNCH_TIMEOUT), TimeUnit.MINUTES);
+        }
+
+        _logger.info("Speculative launch of '{}' (predicted after '{}' with confidence {}).", nextName, name, confidence);
+        stub.launchRealApplication(LaunchScheduler.Priority.SPECULATIVE);
+    }
+
+    /**
+     * Record the speculation of the given stub (standby instance) cancelled after the given timeout unless requested
+     *
+     * @param stub speculative client stub
+     * @param sourceName application name whose request led to this speculation
+     * @param timeout cancellation timeout
+     * @param unit timeout unit
+     */
+    synchronized void speculate(final ClientStub stub, final String sourceName, final long timeout, final TimeUnit unit) {
+        _speculations.put(stub, new Speculation(sourceName, _executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (expire(stub)) {
+                    cancel(stub, "not requested within " + timeout + " " + unit.name().toLowerCase());
+                }
+            }
+        }, timeout, unit)));
+        stub.setStandby(true);
+    }
+
+    /**
+     * Remove the speculation of the given stub once its timeout elapsed
+     *
+     * @param stub speculative client stub
+     * @return true if the speculation was still pending
+     */
+    private synchronized boolean expire(final ClientStub stub) {
+        if (_speculations.remove(stub) != null) {
+            _misses++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Cancel the speculative launch of the given stub unless claimed or registered on the hub
+     *
+     * @param stub speculative client stub
+     * @param reason cancellation reason
+     */
+    private void cancel(final ClientStub stub, final String reason) {
+        _logger.info("Cancelling speculative launch of '{}': {}.", stub.getApplicationName(), reason);
+        cancelStandbyLaunch(stub);
+    }
+
+    /**
+     * Cancel the standby launch of the given stub, retrying later while the launch is starting:
+     * the claim and the cancellation race on the stub standby flag (compare and set) so only the winner acts
+     *
+     * @param stub speculative client stub
+     */
+    private void cancelStandbyLaunch(final ClientStub stub) {
+        if (stub.cancelStandbyLaunch()) {
+            return;
+        }
+        if (!stub.isStandby()) {
+            _logger.info("Speculative launch of '{}' claimed, registered or not cancellable: left running.", stub.getApplicationName());
+            return;
+        }
+        try {
+            _executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    cancelStandbyLaunch(stub);
+                }
+            }, CANCEL_RETRY_DELAY, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException ree) {
+            _logger.debug("Speculative launcher stopped: launch of '{}' left running.", stub.getApplicationName());
+        }
+    }
+
+    /**
+     * Save the usage model
+     */
+    public void stop() {
+        _executor.shutdownNow();
+        final UsageModel model = _model;
+        if (model != null) {
+            model.save();
+        }
+    }
+
+    /**
+     * @return number of correct predictions
+     */
+    synchronized int getHits() {
+        return _hits;
+    }
+
+    /**
+     * @return number of wrong or expired predictions
+     */
+    synchronized int getMisses() {
+        return _misses;
+    }
+
+    /**
+     * @return number of speculative launches in progress
+     */
+    synchronized int getPendingCount() {
+        return _speculations.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SpeculativeLauncher[hits: " + _hits + " misses: " + _misses + " pending: " + _speculations.size() + "]";
+    }
+
+    /**
+     * Speculative launch in progress
+     */
+    private static final class Speculation {
+
+        /** application name whose request led to this speculation */
+        final String sourceName;
+        /** cancellation timeout */
+        final ScheduledFuture<?> timeout;
+
+        /**
+         * Constructor
+         * @param sourceName application name whose request led to this speculation
+         * @param timeout cancellation timeout
+         */
+        Speculation(final String sourceName, final ScheduledFuture<?> timeout) {
+            this.sourceName = sourceName;
+            this.timeout = timeout;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun.stub;
+
+import fr.jmmc.jmcs.data.preference.PreferencesException;
+import fr.jmmc.smprun.preference.PreferenceKey;
+import fr.jmmc.smprun.preference.Preferences;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Learned startup lags per application (exponentially weighted moving averages):
+ * - launch lag: time from launch to the hub registration of the real application,
+ * - ready lag: time from the hub registration to the first successful forward.
+ *
+ * Estimates are loaded from and saved to the AppLauncher preferences.
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+public final class StartupLagModel {
+
+    /** Class logger */
+    private static final Logger _logger = LoggerFactory.getLogger(StartupLagModel.class.getName());
+    /** weight of the last observation in the moving average */
+    private static final double ALPHA = 0.3;
+    /** marker for unknown lags */
+    private static final Long UNKNOWN = Long.valueOf(-1L);
+    /** singleton */
+    private static final StartupLagModel _instance = new StartupLagModel();
+    /* members */
+    /** AppLauncher shared preferences */
+    private final Preferences _preferences;
+    /** learned launch lags keyed by application name */
+    private final Map<String, Long> _launchLags = new ConcurrentHashMap<String, Long>();
+    /** learned ready lags keyed by application name */
+    private final Map<String, Long> _readyLags = new ConcurrentHashMap<String, Long>();
+    /** true if any estimate changed since the last save */
+    private volatile boolean _modified = false;
+
+    /**
+     * @return the singleton instance
+     */
+    public static StartupLagModel getInstance() {
+        return _instance;
+    }
+
+    /**
+     * Private constructor
+     */
+    private StartupLagModel() {
+        _preferences = Preferences.getInstance();
+    }
+
+    /**
+     * Return the learned launch lag (launch to hub registration) of the given application
+     * @param applicationName application name
+     * @return learned lag in milliseconds or -1 if unknown
+     */
+    public long getLaunchLag(final String applicationName) {
+        return getLag(_launchLags, PreferenceKey.APPLICATION_LAUNCH_LAG_PREFIX, applicationName);
+    }
+
+    /**
+     * Return the learned ready lag (hub registration to first successful forward) of the given application
+     * @param applicationName application name
+     * @return learned lag in milliseconds or -1 if unknown
+     */
+    public long getReadyLag(final String applicationName) {
+        return getLag(_readyLags, PreferenceKey.APPLICATION_READY_LAG_PREFIX, applicationName);
+    }
+
+    /**
+     * Record an observed launch lag for the given application
+     * @param applicationName application name
+     * @param lag observed lag in milliseconds
+     */
+    public void recordLaunchLag(final String applicationName, final long lag) {
+        recordLag(_launchLags, PreferenceKey.APPLICATION_LAUNCH_LAG_PREFIX, applicationName, lag);
+    }
+
+    /**
+     * Record an observed ready lag for the given application
+     * @param applicationName application name
+     * @param lag observed lag in milliseconds
+     */
+    public void recordReadyLag(final String applicationName, final long lag) {
+        recordLag(_readyLags, PreferenceKey.APPLICATION_READY_LAG_PREFIX, applicationName, lag);
+    }
+
+    /**
+     * Store modified estimates into preferences and save them (done once at exit to avoid preference notifications)
+     */
+    public void saveToPreferences() {
+        if (!_modified) {
+            return;
+        }
+        _modified = false;
+
+        storeLags(_launchLags, PreferenceKey.APPLICATION_LAUNCH_LAG_PREFIX);
+        storeLags(_readyLags, PreferenceKey.APPLICATION_READY_LAG_PREFIX);
+
+        try {
+            _preferences.saveToFile();
+        } catch (PreferencesException ex) {
+            _logger.warn("Could not write to preference file :", ex);
+        }
+    }
+
+    /**
+     * Return the learned lag, loading it from preferences on first use
+     * @param lags learned lags
+     * @param lagPrefix preference key prefix
+     * @param applicationName application name
+     * @return learned lag in milliseconds or -1 if unknown
+     */
+    private long getLag(final Map<String, Long> lags, final PreferenceKey lagPrefix, final String applicationName) {
+        return lags.computeIfAbsent(applicationName, new Function<String, Long>() {
+            @Override
+            public Long apply(final String name) {
+                return Long.valueOf(_preferences.getApplicationLag(lagPrefix, name));
+            }
+        }).longValue();
+    }
+
+    /**
+     * Update the moving average with the given observation (atomically as stubs may record concurrently)
+     * @param lags learned lags
+     * @param lagPrefix preference key prefix
+     * @param applicationName application name
+     * @param lag observed lag in milliseconds
+     */
+    private void recordLag(final Map<String, Long> lags, final PreferenceKey lagPrefix, final String applicationName, final long lag) {
+        if (lag < 0L) {
+            return;
+        }
+        // load the previous estimate from preferences if needed:
+        getLag(lags, lagPrefix, applicationName);
+
+        final long estimate = lags.compute(applicationName, new BiFunction<String, Long, Long>() {
+            @Override
+            public Long apply(final String name, final Long previous) {
+                return Long.valueOf(average((previous == null) ? -1L : previous.longValue(), lag));
+            }
+        }).longValue();
+        _modified = true;
+
+        _logger.debug("Application '{}' {}: observed {} ms, estimate {} ms.", applicationName, lagPrefix, lag, estimate);
+    }
+
+    /**
+     * Return the moving average updated with the given observation
+     * @param previous previous estimate in milliseconds or -1 if unknown
+     * @param lag observed lag in milliseconds
+     * @return new estimate in milliseconds
+     */
+    static long average(final long previous, final long lag) {
+        return (previous < 0L) ? lag : Math.round(ALPHA * lag + (1.0 - ALPHA) * previous);
+    }
+
+    /**
+     * Store the known lags into preferences
+     * @param lags learned lags
+     * @param lagPrefix preference key prefix
+     */
+    private void storeLags(final Map<String, Long> lags, final PreferenceKey lagPrefix) {
+        for (Map.Entry<String, Long> entry : lags.entrySet()) {
+            if (!UNKNOWN.equals(entry.getValue())) {
+                _preferences.setApplicationLag(lagPrefix, entry.getKey(), entry.getValue().longValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun.stub;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.astrogrid.samp.client.ClientProfile;
+import org.astrogrid.samp.client.DefaultClientProfile;
+import org.astrogrid.samp.client.HubConnector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shared connection layer for all client stubs.
+ *
+ * Each stub keeps its own SAMP registration (one HubConnector per application) but all connectors share the same client
+ * profile (hence the JSAMP client-side XML-RPC callback server) and a single daemon thread performing the periodic hub
+ * reconnection instead of one autoconnect timer thread per stub.
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+public final class StubConnectorPool {
+
+    /** Class logger */
+    private static final Logger _logger = LoggerFactory.getLogger(StubConnectorPool.class.getName());
+    /** delay in seconds between two reconnection attempts */
+    private static final int AUTOCONNECT_PERIOD = 5;
+    /** StubConnectorPool singleton */
+    private static final StubConnectorPool INSTANCE = new StubConnectorPool();
+    /* members */
+    /** shared client profile */
+    private final ClientProfile _profile;
+    /** connectors to keep connected */
+    private final Set<HubConnector> _activeConnectors = new CopyOnWriteArraySet<HubConnector>();
+    /** shared scheduler performing reconnection attempts */
+    private final ScheduledExecutorService _scheduler;
+
+    /**
+     * Return the StubConnectorPool singleton.
+     *
+     * @return StubConnectorPool singleton
+     */
+    public static StubConnectorPool getInstance() {
+        return INSTANCE;
+    }
+
+    /** Private constructor */
+    private StubConnectorPool() {
+        // Get a hook on the SAMP machinery
+        _profile = DefaultClientProfile.getProfile();
+
+        _scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, StubConnectorPool.class.getSimpleName() + "Autoconnect");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        _scheduler.scheduleWithFixedDelay(new Runnable() {
+            /**
+             * Reconnect any disconnected connector (i.e. if the hub shut down)
+             */
+            @Override
+            public void run() {
+                for (HubConnector connector : _activeConnectors) {
+                    try {
+                        if (!connector.isConnected()) {
+                            _logger.debug("Reconnecting stub connector {} ...", connector);
+                            connector.setActive(true);
+                        }
+                    } catch (RuntimeException re) {
+                        _logger.info("Unable to reconnect stub connector:", re);
+                    }
+                }
+            }
+        }, AUTOCONNECT_PERIOD, AUTOCONNECT_PERIOD, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Create a new hub connector using the shared client profile
+     *
+     * @return new hub connector (not yet connected)
+     */
+    public HubConnector createConnector() {
+        return new HubConnector(_profile);
+    }
+
+    /**
+     * Keep the given connector connected (reconnect it when the hub is restarted)
+     *
+     * @param connector connector to monitor
+     */
+    public void register(final HubConnector connector) {
+        _activeConnectors.add(connector);
+    }
+
+    /**
+     * Stop monitoring the given connector
+     *
+     * @param connector connector to forget
+     */
+    public void unregister(final HubConnector connector) {
+        _activeConnectors.remove(connector);
+    }
+
+    /**
+     * @return number of connectors kept connected
+     */
+    public int getActiveConnectorCount() {
+        return _activeConnectors.size();
+    }
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun.stub;
+
+import fr.jmmc.jmcs.util.StringUtils;
+import fr.jmmc.smprsc.data.stub.model.SampStub;
+import fr.jmmc.smprsc.data.stub.model.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.astrogrid.samp.Metadata;
+
+/**
+ * Immutable description of one registry application, i.e. the parsed SampStub data needed to create a client stub.
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+public final class StubDescriptor {
+
+    /* members */
+    /** SAMP meta data (accents removed to be samp compliant) */
+    private final Map<String, String> _metadata;
+    /** declared SAMP subscriptions */
+    private final List<String> _subscriptions;
+    /** sleep delay in milliseconds before sending the SAMP message */
+    private final long _lag;
+    /** application execution type */
+    private final Type _type;
+
+    /**
+     * Create a descriptor from the given SampStub (XML values)
+     *
+     * @param data XML values
+     * @return new descriptor
+     */
+    public static StubDescriptor fromSampStub(final SampStub data) {
+
+        final Map<String, String> metadata = new LinkedHashMap<String, String>();
+        for (fr.jmmc.smprsc.data.stub.model.Metadata md : data.getMetadatas()) {
+            metadata.put(md.getKey(), StringUtils.removeAccents(md.getValue()));
+        }
+
+        return new StubDescriptor(metadata, new ArrayList<String>(data.getSubscriptions()), data.getLag().longValue(), data.getType());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param metadata SAMP meta data (accents already removed)
+     * @param subscriptions declared SAMP subscriptions
+     * @param lag sleep delay in milliseconds before sending the SAMP message
+     * @param type application execution type
+     */
+    public StubDescriptor(final Map<String, String> metadata, final List<String> subscriptions, final long lag, final Type type) {
+        _metadata = Collections.unmodifiableMap(metadata);
+        _subscriptions = Collections.unmodifiableList(subscriptions);
+        _lag = lag;
+        _type = type;
+    }
+
+    /**
+     * @return SAMP meta data (accents removed)
+     */
+    public Map<String, String> getMetadata() {
+        return _metadata;
+    }
+
+    /**
+     * @return the description of the application (samp.description.text meta data), null otherwise
+     */
+    public String getDescription() {
+        return _metadata.get(Metadata.DESCTEXT_KEY);
+    }
+
+    /**
+     * @return declared SAMP subscriptions
+     */
+    public List<String> getSubscriptions() {
+        return _subscriptions;
+    }
+
+    /**
+     * @return sleep delay in milliseconds before sending the SAMP message
+     */
+    public long getLag() {
+        return _lag;
+    }
+
+    /**
+     * @return application execution type
+     */
+    public Type getType() {
+        return _type;
+    }
+}
@@ -0,0 +1,286 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun.stub;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Message counters of a client stub (thread-safe).
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+public final class StubMetrics {
+
+    /** number of messages queued */
+    private final AtomicLong _enqueued = new AtomicLong();
+    /** number of messages forwarded to the real application */
+    private final AtomicLong _forwarded = new AtomicLong();
+    /** number of messages dropped (queue overflow) */
+    private final AtomicLong _dropped = new AtomicLong();
+    /** number of messages expired (time-to-live elapsed while queued) */
+    private final AtomicLong _expired = new AtomicLong();
+    /** number of messages skipped as the real application does not subscribe to their mType */
+    private final AtomicLong _unsubscribed = new AtomicLong();
+    /** number of messages not delivered (SAMP call or notification failure) */
+    private final AtomicLong _undelivered = new AtomicLong();
+    /** number of duplicated messages discarded */
+    private final AtomicLong _duplicated = new AtomicLong();
+    /** number of forward retries (call-and-track mode) */
+    private final AtomicLong _retries = new AtomicLong();
+    /** number of error responses (call-and-track mode) */
+    private final AtomicLong _failures = new AtomicLong();
+    /** delivery latency: time for the hub to accept the call (call-and-track mode) */
+    private final Latency _deliveryLatency = new Latency();
+    /** processing latency: time until the real application responds (call-and-track mode) */
+    private final Latency _processingLatency = new Latency();
+
+    /**
+     * Package-private constructor
+     */
+    StubMetrics() {
+        super();
+    }
+
+    /**
+     * Count a queued message
+     */
+    void incEnqueued() {
+        _enqueued.incrementAndGet();
+    }
+
+    /**
+     * Count a forwarded message
+     */
+    void incForwarded() {
+        _forwarded.incrementAndGet();
+    }
+
+    /**
+     * Count a dropped message
+     */
+    void incDropped() {
+        _dropped.incrementAndGet();
+    }
+
+    /**
+     * Count a duplicated message
+     */
+    void incDuplicated() {
+        _duplicated.incrementAndGet();
+    }
+
+    /**
+     * Count a message skipped as the real application does not subscribe to its mType
+     */
+    void incUnsubscribed() {
+        _unsubscribed.incrementAndGet();
+    }
+
+    /**
+     * Count a message not delivered (SAMP call or notification failure)
+     */
+    void incUndelivered() {
+        _undelivered.incrementAndGet();
+    }
+
+    /**
+     * Count a forward retry
+     */
+    void incRetries() {
+        _retries.incrementAndGet();
+    }
+
+    /**
+     * Count an error response
+     */
+    void incFailures() {
+        _failures.incrementAndGet();
+    }
+
+    /**
+     * Record a delivery latency
+     * @param latency latency in milliseconds
+     */
+    void recordDeliveryLatency(final long latency) {
+        _deliveryLatency.record(latency);
+    }
+
+    /**
+     * Record a processing latency
+     * @param latency latency in milliseconds
+     */
+    void recordProcessingLatency(final long latency) {
+        _processingLatency.record(latency);
+    }
+
+    /**
+     * Count expired messages (time-to-live elapsed)
+     * @param count number of expired messages
+     */
+    void addExpired(final int count) {
+        _expired.addAndGet(count);
+    }
+
+    /**
+     * @return number of messages queued
+     */
+    public long getEnqueued() {
+        return _enqueued.get();
+    }
+
+    /**
+     * @return number of messages forwarded to the real application
+     */
+    public long getForwarded() {
+        return _forwarded.get();
+    }
+
+    /**
+     * @return number of messages dropped (queue overflow)
+     */
+    public long getDropped() {
+        return _dropped.get();
+    }
+
+    /**
+     * @return number of messages expired (time-to-live elapsed while queued)
+     */
+    public long getExpired() {
+        return _expired.get();
+    }
+
+    /**
+     * @return number of messages skipped as the real application does not subscribe to their mType
+     */
+    public long getUnsubscribed() {
+        return _unsubscribed.get();
+    }
+
+    /**
+     * @return number of messages not delivered (SAMP call or notification failure)
+     */
+    public long getUndelivered() {
+        return _undelivered.get();
+    }
+
+    /**
+     * @return number of duplicated messages discarded
+     */
+    public long getDuplicated() {
+        return _duplicated.get();
+    }
+
+    /**
+     * @return number of forward retries (call-and-track mode)
+     */
+    public long getRetries() {
+        return _retries.get();
+    }
+
+    /**
+     * @return number of error responses (call-and-track mode)
+     */
+    public long getFailures() {
+        return _failures.get();
+    }
+
+    /**
+     * @return delivery latency: time for the hub to accept the call (call-and-track mode)
+     */
+    public Latency getDeliveryLatency() {
+        return _deliveryLatency;
+    }
+
+    /**
+     * @return processing latency: time until the real application responds (call-and-track mode)
+     */
+    public Latency getProcessingLatency() {
+        return _processingLatency;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(128);
+        sb.append("enqueued: ").append(getEnqueued()).append(" forwarded: ").append(getForwarded())
+                .append(" dropped: ").append(getDropped()).append(" expired: ").append(getExpired())
+                .append(" duplicated: ").append(getDuplicated()).append(" unsubscribed: ").append(getUnsubscribed())
+                .append(" undelivered: ").append(getUndelivered());
+        if (_deliveryLatency.getCount() != 0L) {
+            sb.append(" retries: ").append(getRetries()).append(" failures: ").append(getFailures())
+                    .append(" delivery: ").append(_deliveryLatency).append(" processing: ").append(_processingLatency);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Latency statistics (count, average and maximum in milliseconds)
+     */
+    public static final class Latency {
+
+        /** number of samples */
+        private final AtomicLong _count = new AtomicLong();
+        /** sum of latencies */
+        private final AtomicLong _sum = new AtomicLong();
+        /** maximum latency */
+        private final AtomicLong _max = new AtomicLong();
+
+        /**
+         * Record the given latency
+         * @param latency latency in milliseconds
+         */
+        void record(final long latency) {
+            _count.incrementAndGet();
+            _sum.addAndGet(latency);
+            long max;
+            while (latency > (max = _max.get())) {
+                if (_max.compareAndSet(max, latency)) {
+                    break;
+                }
+            }
+        }
+
+        /**
+         * @return number of samples
+         */
+        public long getCount() {
+            return _count.get();
+        }
+
+        /**
+         * @return average latency in milliseconds (0 if no sample)
+         */
+        public long getAverage() {
+            final long count = _count.get();
+            return (count == 0L) ? 0L : _sum.get() / count;
+        }
+
+        /**
+         * @return maximum latency in milliseconds
+         */
+        public long getMax() {
+            return _max.get();
+        }
+
+        @Override
+        public String toString() {
+            return "avg " + getAverage() + " ms (max " + getMax() + " ms, n = " + getCount() + ")";
+        }
+    }
+}
@@ -24,8 +24,6 @@ import fr.jmmc.jmcs.gui.util.WindowUtils;
 import fr.jmmc.smprun.AppLauncher;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.Observable;
-import java.util.Observer;
 import javax.swing.JButton;
 import javax.swing.JProgressBar;
 import javax.swing.Timer;
@@ -37,7 +35,7 @@ import org.slf4j.LoggerFactory;
  *
  * @author Sylvain LAFRASSE, Laurent BOURGES
  */
-public class StubMonitor implements Observer {
+public class StubMonitor implements ClientStubListener {
 
     /**
      * Class logger
@@ -48,14 +46,18 @@ public class StubMonitor implements Observer {
      */
     public final static int AUTO_HIDE_DELAY = 5 * 1000;
     /**
-     * cancel launching delay in milliseconds
+     * default cancel launching delay in milliseconds (if no learned launch lag)
      */
     public final static int CANCEL_TIMEOUT = 5 * 60 * 1000;
     /* members */
     /**
-     * Monitor GUI
+     * Application name
      */
-    private MonitorWindow _window;
+    private final String _name;
+    /**
+     * Monitor GUI (lazily created using EDT)
+     */
+    private MonitorWindow _window = null;
     /**
      * Cancel launching timer (timeout)
      */
@@ -68,35 +70,36 @@ public class StubMonitor implements Observer {
      */
     public StubMonitor(final String name) {
         super();
+        _name = name;
+    }
 
-        SwingUtils.invokeEDT(new Runnable() {
-            /**
-             * Synchronized by EDT
-             */
-            @Override
-            public void run() {
-                _window = new MonitorWindow();
-                _window.setTitle("Monitor - " + name);
-                _window.setVisible(false);
-                _window.pack();
-                WindowUtils.centerOnMainScreen(_window);
-            }
-        });
+    /**
+     * Return the monitor window, creating it on first use (EDT only)
+     *
+     * @return monitor window
+     */
+    private MonitorWindow getWindow() {
+        if (_window == null) {
+            _window = new MonitorWindow();
+            _window.setTitle("Monitor - " + _name);
+            _window.setVisible(false);
+            _window.pack();
+            WindowUtils.centerOnMainScreen(_window);
+        }
+        return _window;
     }
 
     /**
-     * Handle the observable event
+     * Handle the client stub state change (called by the listener dedicated thread)
      *
-     * @see java.util.Observer
-     * @param obj ClientStub instance
-     * @param arg ClientStubState instance
+     * @see ClientStubListener
+     * @param client ClientStub instance
+     * @param state ClientStubState instance
      */
     @Override
-    public void update(final Observable obj, final Object arg) {
-        final ClientStub client = (ClientStub) obj;
+    public void stateChanged(final ClientStub client, final ClientStubState state) {
         final String applicationName = client.getApplicationName();
 
-        final ClientStubState state = (ClientStubState) arg;
         final String message = state.message();
         final int step = state.step();
 
@@ -107,6 +110,9 @@ public class StubMonitor implements Observer {
             _logger.debug("StubMonitor['{}'] : '{}' ({} / {}).", applicationName, state.message(), step, maxStep);
         }
 
+        // Do not display background launches (warm standby or speculative instances not claimed yet):
+        final boolean background = client.isStandby();
+
         // Do not display initialization statuses:
         if (step > minStep) {
 
@@ -116,9 +122,14 @@ public class StubMonitor implements Observer {
                  */
                 @Override
                 public void run() {
+                    if (background) {
+                        return;
+                    }
+
+                    final MonitorWindow window = getWindow();
 
                     // Add cancel button action:
-                    final JButton cancelButton = _window.getButtonCancel();
+                    final JButton cancelButton = window.getButtonCancel();
 
                     final boolean isLaunching = (step == ClientStubState.LAUNCHING.step());
 
@@ -143,7 +154,10 @@ public class StubMonitor implements Observer {
                             cancelButton.addActionListener(cancelTask);
 
                             // add cancel timer:
-                            _cancelTimer = new Timer(CANCEL_TIMEOUT, cancelTask);
+                            final int timeout = (int) client.getLaunchTimeout(CANCEL_TIMEOUT);
+                            _logger.debug("StubMonitor['{}'] : cancel timeout = {} ms.", applicationName, timeout);
+
+                            _cancelTimer = new Timer(timeout, cancelTask);
                             _cancelTimer.setRepeats(false);
                         }
                     } else {
@@ -160,9 +174,9 @@ public class StubMonitor implements Observer {
                         // Bring this application to front
                         AppLauncher.showFrameToFront();
 
-                        _window.getLabelMessage().setText("Redirecting to " + applicationName + ":");
+                        window.getLabelMessage().setText("Redirecting to " + applicationName + ":");
 
-                        final JProgressBar bar = _window.getProgressBar();
+                        final JProgressBar bar = window.getProgressBar();
 
                         bar.setMinimum(0);
                         bar.setMaximum(maxStep);
@@ -176,8 +190,8 @@ public class StubMonitor implements Observer {
                             bar.setString(message + " ...");
                         }
 
-                        if (!_window.isVisible()) {
-                            _window.setVisible(true);
+                        if (!window.isVisible()) {
+                            window.setVisible(true);
                         }
                     }
                 }
@@ -189,12 +203,12 @@ public class StubMonitor implements Observer {
                 // anyway: cancel timer:
                 enableCancelTimer(false);
 
-                if (_window.isVisible()) {
+                if (_window != null && _window.isVisible()) {
                     // Postpone hiding to let the user see the last message
                     final ActionListener hideTask = new ActionListener() {
                         @Override
                         public void actionPerformed(ActionEvent e) {
-                            if (_window.isVisible()) {
+                            if (_window != null && _window.isVisible()) {
                                 _window.setVisible(false);
                             }
                         }
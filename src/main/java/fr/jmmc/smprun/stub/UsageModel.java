@@ -0,0 +1,361 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun.stub;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local usage model of application requests (intercepted messages and dock clicks):
+ * - transitions: how often an application is requested shortly after another one,
+ * - hours: how often each application is requested at each hour of the day.
+ *
+ * The model is loaded from and saved to a properties file in the per-user private directory.
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+public final class UsageModel {
+
+    /** Class logger */
+    private static final Logger _logger = LoggerFactory.getLogger(UsageModel.class.getName());
+    /** model directory name (private directory) */
+    private static final String MODEL_DIR_NAME = "usage";
+    /** model file name */
+    private static final String MODEL_FILE_NAME = "usage.properties";
+    /** transition key prefix */
+    private static final String TRANSITION_PREFIX = "transition|";
+    /** hour key prefix */
+    private static final String HOUR_PREFIX = "hour|";
+    /** key separator */
+    private static final char SEPARATOR = '|';
+    /** maximum delay between two requests to record a transition (30 minutes) */
+    private static final long TRANSITION_WINDOW = TimeUnit.MINUTES.toNanos(30L);
+    /** counts are halved above this total to favor recent usage */
+    private static final int MAX_COUNT = 1000;
+    /** hours per day */
+    private static final int HOURS = 24;
+    /** singleton (loaded on first use) */
+    private static UsageModel _instance = null;
+    /* members */
+    /** model file (null if not persisted) */
+    private final File _file;
+    /** transition counts keyed by previous then next application name (guarded by this) */
+    private final Map<String, Map<String, Integer>> _transitions = new HashMap<String, Map<String, Integer>>(16);
+    /** request counts per hour of the day keyed by application name (guarded by this) */
+    private final Map<String, int[]> _hours = new HashMap<String, int[]>(16);
+    /** last requested application name (null if none) */
+    private String _lastName = null;
+    /** last request time (nanoseconds) */
+    private long _lastTime = 0L;
+    /** true if the model changed since the last save */
+    private boolean _modified = false;
+
+    /**
+     * @return the singleton instance
+     */
+    public static synchronized UsageModel getInstance() {
+        if (_instance == null) {
+            File file = null;
+            try {
+                file = new File(PrivateFiles.getDirectory(MODEL_DIR_NAME), MODEL_FILE_NAME);
+            } catch (IOException ioe) {
+                _logger.warn("Usage model not persisted:", ioe);
+            }
+            _instance = new UsageModel(file);
+        }
+        return _instance;
+    }
+
+    /**
+     * Constructor
+     *
+     * @param file model file (null if not persisted)
+     */
+    UsageModel(final File file) {
+        _file = file;
+        load();
+    }
+
+    /**
+     * Record a request for the given application
+     *
+     * @param applicationName requested application name
+     */
+    public synchronized void recordRequest(final String applicationName) {
+        final long now = System.nanoTime();
+
+        if (_lastName != null && !_lastName.equals(applicationName) && (now - _lastTime) <= TRANSITION_WINDOW) {
+            Map<String, Integer> nextCounts = _transitions.get(_lastName);
+            if (nextCounts == null) {
+                nextCounts = new HashMap<String, Integer>(8);
+                _transitions.put(_lastName, nextCounts);
+            }
+            final Integer count = nextCounts.get(applicationName);
+            nextCounts.put(applicationName, Integer.valueOf((count == null) ? 1 : count.intValue() + 1));
+
+            if (total(nextCounts) > MAX_COUNT) {
+                for (Map.Entry<String, Integer> entry : nextCounts.entrySet()) {
+                    entry.setValue(Integer.valueOf(entry.getValue().intValue() / 2));
+                }
+            }
+        }
+
+        int[] hours = _hours.get(applicationName);
+        if (hours == null) {
+            hours = new int[HOURS];
+            _hours.put(applicationName, hours);
+        }
+        hours[currentHour()]++;
+        if (total(hours) > MAX_COUNT) {
+            for (int i = 0; i < HOURS; i++) {
+                hours[i] /= 2;
+            }
+        }
+
+        _lastName = applicationName;
+        _lastTime = now;
+        _modified = true;
+    }
+
+    /**
+     * Return the number of transitions recorded from the given application
+     *
+     * @param applicationName previous application name
+     * @return number of transitions recorded from the given application
+     */
+    public synchronized int getTransitionCount(final String applicationName) {
+        final Map<String, Integer> nextCounts = _transitions.get(applicationName);
+        return (nextCounts == null) ? 0 : total(nextCounts);
+    }
+
+    /**
+     * Return the most likely application requested after the given one
+     *
+     * @param applicationName previous application name
+     * @return most likely next application name or null if unknown
+     */
+    public synchronized String predictNext(final String applicationName) {
+        final Map<String, Integer> nextCounts = _transitions.get(applicationName);
+        if (nextCounts == null) {
+            return null;
+        }
+        String best = null;
+        double bestConfidence = 0.0;
+        for (String next : nextCounts.keySet()) {
+            final double confidence = getConfidence(applicationName, next);
+            if (confidence > bestConfidence) {
+                best = next;
+                bestConfidence = confidence;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Return the confidence (0..1) that the given next application is requested after the given previous one now:
+     * transition probability weighted by the usage of the next application at this hour of the day
+     *
+     * @param previousName previous application name
+     * @param nextName next application name
+     * @return confidence (0..1)
+     */
+    public synchronized double getConfidence(final String previousName, final String nextName) {
+        final Map<String, Integer> nextCounts = _transitions.get(previousName);
+        if (nextCounts == null) {
+            return 0.0;
+        }
+        final Integer count = nextCounts.get(nextName);
+        final int total = total(nextCounts);
+        if (count == null || total == 0) {
+            return 0.0;
+        }
+        return (count.doubleValue() / total) * getHourWeight(nextName, currentHour());
+    }
+
+    /**
+     * Return the weight (0..1) of the given hour for the given application:
+     * 1 if the application is used at least as much as average around this hour
+     *
+     * @param applicationName application name
+     * @param hour hour of the day
+     * @return hour weight (0..1)
+     */
+    private double getHourWeight(final String applicationName, final int hour) {
+        final int[] hours = _hours.get(applicationName);
+        if (hours == null) {
+            return 1.0;
+        }
+        // requests around this hour (smoothed) compared to the average over 3 hours:
+        final double around = hours[(hour + HOURS - 1) % HOURS] + hours[hour] + hours[(hour + 1) % HOURS] + 1.0;
+        final double average = (3.0 * total(hours)) / HOURS + 1.0;
+        return Math.min(1.0, around / average);
+    }
+
+    /**
+     * Save the model to its file if modified
+     */
+    public synchronized void save() {
+        if (!_modified || _file == null) {
+            return;
+        }
+        _modified = false;
+
+        final Properties properties = new Properties();
+        for (Map.Entry<String, Map<String, Integer>> entry : _transitions.entrySet()) {
+            for (Map.Entry<String, Integer> next : entry.getValue().entrySet()) {
+                if (next.getValue().intValue() != 0) {
+                    properties.setProperty(TRANSITION_PREFIX + entry.getKey() + SEPARATOR + next.getKey(), next.getValue().toString());
+                }
+            }
+        }
+        for (Map.Entry<String, int[]> entry : _hours.entrySet()) {
+            final StringBuilder sb = new StringBuilder(64);
+            for (int count : entry.getValue()) {
+                if (sb.length() != 0) {
+                    sb.append(',');
+                }
+                sb.append(count);
+            }
+            properties.setProperty(HOUR_PREFIX + entry.getKey(), sb.toString());
+        }
+
+        OutputStream out = null;
+        try {
+            out = PrivateFiles.newOutputStream(_file, false);
+            properties.store(out, "AppLauncher usage model");
+            _logger.debug("Usage model saved to '{}'.", _file);
+        } catch (IOException ioe) {
+            _logger.warn("Unable to save the usage model to '{}':", _file, ioe);
+        } finally {
+            close(out);
+        }
+    }
+
+    /**
+     * Load the model from its file (if any)
+     */
+    private void load() {
+        if (_file == null || !_file.exists()) {
+            return;
+        }
+        if (!PrivateFiles.isPrivateFile(_file)) {
+            _logger.warn("Ignoring usage model '{}' (not a regular file owned by the user).", _file);
+            return;
+        }
+        final Properties properties = new Properties();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(_file);
+            properties.load(in);
+        } catch (IOException ioe) {
+            _logger.warn("Unable to load the usage model from '{}':", _file, ioe);
+            return;
+        } finally {
+            close(in);
+        }
+
+        for (String key : properties.stringPropertyNames()) {
+            final String value = properties.getProperty(key);
+            try {
+                if (key.startsWith(TRANSITION_PREFIX)) {
+                    final int pos = key.indexOf(SEPARATOR, TRANSITION_PREFIX.length());
+                    if (pos != -1) {
+                        final String previous = key.substring(TRANSITION_PREFIX.length(), pos);
+                        Map<String, Integer> nextCounts = _transitions.get(previous);
+                        if (nextCounts == null) {
+                            nextCounts = new HashMap<String, Integer>(8);
+                            _transitions.put(previous, nextCounts);
+                        }
+                        nextCounts.put(key.substring(pos + 1), Integer.valueOf(value));
+                    }
+                } else if (key.startsWith(HOUR_PREFIX)) {
+                    final String[] counts = value.split(",");
+                    if (counts.length == HOURS) {
+                        final int[] hours = new int[HOURS];
+                        for (int i = 0; i < HOURS; i++) {
+                            hours[i] = Integer.parseInt(counts[i].trim());
+                        }
+                        _hours.put(key.substring(HOUR_PREFIX.length()), hours);
+                    }
+                }
+            } catch (NumberFormatException nfe) {
+                _logger.debug("Ignoring invalid usage entry '{}' = '{}'.", key, value);
+            }
+        }
+        _logger.info("Usage model loaded: {} applications.", _hours.size());
+    }
+
+    /**
+     * @return current hour of the day
+     */
+    private static int currentHour() {
+        return Calendar.getInstance().get(Calendar.HOUR_OF_DAY);
+    }
+
+    /**
+     * @param counts counts
+     * @return sum of the given counts
+     */
+    private static int total(final Map<String, Integer> counts) {
+        int total = 0;
+        for (Integer count : counts.values()) {
+            total += count.intValue();
+        }
+        return total;
+    }
+
+    /**
+     * @param counts counts
+     * @return sum of the given counts
+     */
+    private static int total(final int[] counts) {
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Close the given stream quietly
+     *
+     * @param stream stream to close (may be null)
+     */
+    private static void close(final Closeable stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException ioe) {
+                _logger.debug("Unable to close stream:", ioe);
+            }
+        }
+    }
+}
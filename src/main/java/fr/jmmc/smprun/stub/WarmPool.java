@@ -0,0 +1,269 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun.stub;
+
+import fr.jmmc.jmcs.util.FileUtils;
+import fr.jmmc.smprsc.data.stub.model.Type;
+import fr.jmmc.smprun.preference.PreferenceKey;
+import fr.jmmc.smprun.preference.Preferences;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Opt-in pool of warm standby instances: JNLP applications listed in the warm.application.list preference are launched
+ * in background (lowest launch priority, while no other launch is pending) once their stub listens to the hub.
+ * The first message or dock click claims the running instance.
+ *
+ * Only launches not registered yet are evicted: they are cancelled beyond the idle timeout or while free physical
+ * memory is low. Once the real application registered on the hub, it is never evicted nor killed; it still counts
+ * against warm.pool.max.memory until it is claimed or exits, so registered instances are never replaced by new ones.
+ *
+ * Note: claims are only visible through AppLauncher (stub messages and dock clicks): an instance used directly by the
+ * user stays counted until it exits.
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+public final class WarmPool {
+
+    /** Class logger */
+    private static final Logger _logger = LoggerFactory.getLogger(WarmPool.class.getName());
+    /** delay between pool checks in seconds */
+    private static final long CHECK_PERIOD = 30L;
+    /** one megabyte */
+    private static final long MEGA = 1024L * 1024L;
+    /** singleton */
+    private static final WarmPool _instance = new WarmPool();
+    /* members */
+    /** AppLauncher shared preferences */
+    private final Preferences _preferences;
+    /** warm application names keyed by cleaned application name */
+    private final Map<String, String> _names = new LinkedHashMap<String, String>(16);
+    /** created client stubs keyed by application name (live map) */
+    private Map<String, ClientStub> _clientStubs = null;
+    /** warm instances not claimed yet (launch time in nanoseconds) keyed by cleaned application name (insertion order) */
+    private final Map<String, Long> _warm = new LinkedHashMap<String, Long>(8);
+    /** cleaned application names evicted, exited or left running (not warmed again during this session) */
+    private final Set<String> _evicted = new HashSet<String>(8);
+    /** pool checker (null if stopped) */
+    private ScheduledExecutorService _checker = null;
+
+    /**
+     * @return the singleton instance
+     */
+    public static WarmPool getInstance() {
+        return _instance;
+    }
+
+    /**
+     * Private constructor
+     */
+    private WarmPool() {
+        _preferences = Preferences.getInstance();
+    }
+
+    /**
+     * Start the pool for the given applications if any warm application is configured
+     *
+     * @param descriptors stub descriptors keyed by application name
+     * @param clientStubs created client stubs keyed by application name (live map: stubs are created on first use)
+     */
+    public synchronized void start(final Map<String, StubDescriptor> descriptors, final Map<String, ClientStub> clientStubs) {
+        final List<String> warmNames = _preferences.getWarmApplicationNames();
+        if (_checker != null || warmNames == null || warmNames.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<String, StubDescriptor> entry : descriptors.entrySet()) {
+            final String name = FileUtils.cleanupFileName(entry.getKey());
+            if (warmNames.contains(name)) {
+                final Type type = entry.getValue().getType();
+                if (type == Type.JNLP) {
+                    _names.put(name, entry.getKey());
+                } else {
+                    // only JNLP launches can be cancelled:
+                    _logger.info("Warm application '{}' ignored ({} application).", name, type);
+                }
+            }
+        }
+        if (_names.isEmpty()) {
+            _logger.info("No stub found for warm applications {}.", warmNames);
+            return;
+        }
+        _clientStubs = clientStubs;
+        _logger.info("Warm standby pool started for {}.", _names.keySet());
+
+        _checker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, WarmPool.class.getSimpleName());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        _checker.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    check();
+                } catch (RuntimeException re) {
+                    _logger.error("Warm standby pool check failure:", re);
+                }
+            }
+        }, Math.max(0, _preferences.getPreferenceAsInt(PreferenceKey.WARM_POOL_START_DELAY)), CHECK_PERIOD, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop the pool (warm standby instances are left running)
+     */
+    public synchronized void stop() {
+        if (_checker != null) {
+            _checker.shutdownNow();
+            _checker = null;
+        }
+    }
+
+    /**
+     * Release claimed or exited instances, cancel idle launches not registered yet (or the oldest one under memory
+     * pressure) then warm one more application if the pool and the launch scheduler are idle enough
+     */
+    private synchronized void check() {
+        final LaunchScheduler scheduler = LaunchScheduler.getInstance();
+        final long now = System.nanoTime();
+        final long idleTimeout = TimeUnit.MINUTES.toNanos(_preferences.getPreferenceAsInt(PreferenceKey.WARM_POOL_IDLE_TIMEOUT));
+        final int memoryPerApplication = _preferences.getPreferenceAsInt(PreferenceKey.LAUNCH_MEMORY_PER_APPLICATION);
+
+        for (Iterator<Map.Entry<String, Long>> it = _warm.entrySet().iterator(); it.hasNext();) {
+            final Map.Entry<String, Long> entry = it.next();
+            final String name = entry.getKey();
+            final ClientStub stub = getClientStub(name);
+            final long warmTime = entry.getValue().longValue();
+            final long age = now - warmTime;
+
+            if (isClaimed(stub.getRequestTime(), warmTime)) {
+                _logger.info("Warm instance of '{}' claimed after {} s.", name, TimeUnit.NANOSECONDS.toSeconds(age));
+                _evicted.add(name);
+                it.remove();
+            } else if (stub.getState() == ClientStubState.LISTENING && !scheduler.isScheduled(stub)) {
+                _logger.info("Warm instance of '{}' exited unclaimed.", name);
+                stub.setStandby(false);
+                _evicted.add(name);
+                it.remove();
+            } else if (stub.isStandby() && idleTimeout != 0L && age > idleTimeout) {
+                _logger.info("Evicting warm standby instance of '{}' (idle for {} s).", name, TimeUnit.NANOSECONDS.toSeconds(age));
+                if (evict(name, stub)) {
+                    it.remove();
+                }
+            }
+        }
+
+        // memory pressure: evict the oldest instance not registered yet
+        final long freeMemory = LaunchScheduler.getFreePhysicalMemory();
+        if (freeMemory >= 0L && freeMemory < MEGA * memoryPerApplication) {
+            for (String name : _warm.keySet()) {
+                final ClientStub stub = getClientStub(name);
+                if (stub.isStandby()) {
+                    _logger.info("Evicting warm standby instance of '{}' (free memory: {} MB).", name, freeMemory / MEGA);
+                    if (evict(name, stub)) {
+                        _warm.remove(name);
+                    }
+                    break;
+                }
+            }
+        }
+
+        // warm one more application (idle time only): registered instances not claimed yet count against the cap
+        if (_warm.size() >= getMaxInstances(_preferences.getPreferenceAsInt(PreferenceKey.WARM_POOL_MAX_MEMORY), memoryPerApplication)
+                || scheduler.getQueueDepth() != 0 || scheduler.getRunningCount() != 0
+                || (freeMemory >= 0L && freeMemory < 2L * MEGA * memoryPerApplication)) {
+            return;
+        }
+        for (String name : _names.keySet()) {
+            final ClientStub stub = getClientStub(name);
+
+            // only stubs created and listening to the hub (i.e. real application not running):
+            if (stub != null && !_warm.containsKey(name) && !_evicted.contains(name)
+                    && stub.getState() == ClientStubState.LISTENING && !scheduler.isScheduled(stub)) {
+                _logger.info("Starting warm standby instance of '{}' ...", name);
+                stub.setStandby(true);
+                stub.launchRealApplication(LaunchScheduler.Priority.BACKGROUND);
+                _warm.put(name, Long.valueOf(now));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Return the maximum number of warm instances
+     *
+     * @param maxMemory warm pool memory cap in megabytes
+     * @param memoryPerApplication memory used by one application in megabytes
+     * @return maximum number of warm instances
+     */
+    static long getMaxInstances(final int maxMemory, final int memoryPerApplication) {
+        return Math.max(0, maxMemory) / Math.max(1, memoryPerApplication);
+    }
+
+    /**
+     * Return true if the warm instance was claimed i.e. requested (message or dock click) after its launch
+     *
+     * @param requestTime time of the last launch request (nano time) or 0 if never requested
+     * @param warmTime warm launch time (nano time)
+     * @return true if the warm instance was claimed
+     */
+    static boolean isClaimed(final long requestTime, final long warmTime) {
+        return requestTime != 0L && requestTime - warmTime > 0L;
+    }
+
+    /**
+     * Return the client stub of the given warm application
+     *
+     * @param name cleaned application name
+     * @return client stub or null if not created yet
+     */
+    private ClientStub getClientStub(final String name) {
+        return _clientStubs.get(_names.get(name));
+    }
+
+    /**
+     * Cancel the launch of the warm standby instance of the given stub unless it was claimed or its real application
+     * registered (not warmed again during this session)
+     *
+     * @param name cleaned application name
+     * @param stub client stub
+     * @return true if the launch was cancelled, false if the instance stays in the pool (registered, left running or
+     * launch starting)
+     */
+    private boolean evict(final String name, final ClientStub stub) {
+        if (stub.cancelStandbyLaunch()) {
+            _evicted.add(name);
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun;
+
+import fr.jmmc.smprsc.data.list.model.Category;
+import fr.jmmc.smprsc.data.stub.model.Type;
+import fr.jmmc.smprun.stub.StubDescriptor;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Registry cache round-trip and version key checks.
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+public class StubRegistryCacheTest {
+
+    /** cache file */
+    private File _file;
+
+    @Before
+    public void setUp() throws IOException {
+        _file = new File(Files.createTempDirectory("registry").toFile(), "registry.cache");
+    }
+
+    @After
+    public void tearDown() {
+        _file.delete();
+        _file.getParentFile().delete();
+    }
+
+    /**
+     * Fill and save a cache using the given key
+     * @param key registry version key
+     */
+    private void save(final String key) {
+        final Map<String, String> metadata = new LinkedHashMap<String, String>();
+        metadata.put("samp.name", "Aspro2");
+        metadata.put("fr.jmmc.applauncher.cli.path", null);
+
+        final StubRegistryCache cache = new StubRegistryCache(_file, key);
+        cache.putCategoryApplicationNames(Category.JMMC, Arrays.asList("Aspro2", "SearchCal"));
+        cache.putDescriptor("Aspro2", new StubDescriptor(metadata, Arrays.asList("table.load.votable"), 1500L, Type.JNLP));
+        cache.putDescriptor("Unknown", new StubDescriptor(new LinkedHashMap<String, String>(), Arrays.<String>asList(), 0L, null));
+        cache.saveIfModified();
+    }
+
+    @Test
+    public void roundTripKeepsDescriptorsAndNulls() {
+        save("2|1.0");
+
+        final StubRegistryCache cache = new StubRegistryCache(_file, "2|1.0");
+        assertTrue(cache.read());
+        assertEquals(Arrays.asList("Aspro2", "SearchCal"), cache.getCategoryApplicationNames(Category.JMMC));
+
+        final StubDescriptor aspro = cache.getDescriptor("Aspro2");
+        assertEquals(Type.JNLP, aspro.getType());
+        assertEquals(1500L, aspro.getLag());
+        assertEquals(Arrays.asList("table.load.votable"), aspro.getSubscriptions());
+        assertEquals("Aspro2", aspro.getMetadata().get("samp.name"));
+        assertTrue(aspro.getMetadata().containsKey("fr.jmmc.applauncher.cli.path"));
+        assertNull(aspro.getMetadata().get("fr.jmmc.applauncher.cli.path"));
+
+        assertNull(cache.getDescriptor("Unknown").getType());
+    }
+
+    @Test
+    public void staleKeyIsRejected() {
+        save("2|1.0");
+
+        assertFalse(new StubRegistryCache(_file, "2|1.1").read());
+    }
+
+    @Test
+    public void savedCacheCanBeReplaced() {
+        save("2|1.0");
+        save("2|1.1");
+
+        assertTrue(new StubRegistryCache(_file, "2|1.1").read());
+    }
+
+    @Test
+    public void truncatedCacheIsRejected() throws IOException {
+        final FileOutputStream out = new FileOutputStream(_file);
+        try {
+            out.write(new byte[]{0x53, 0x4D, 0x50});
+        } finally {
+            out.close();
+        }
+        assertFalse(new StubRegistryCache(_file, "2|1.0").read());
+    }
+
+    @Test
+    public void missingPrivateDirectoryDisablesCache() {
+        final StubRegistryCache cache = new StubRegistryCache(null, "2|1.0");
+        assertFalse(cache.read());
+        cache.saveIfModified();
+    }
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun.stub;
+
+import java.util.EnumSet;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Client stub state machine transition checks.
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+public class ClientStubStateTest {
+
+    /**
+     * Assert that the given states can be walked through in order
+     * @param states states
+     */
+    private static void assertPath(final ClientStubState... states) {
+        for (int i = 1; i < states.length; i++) {
+            assertTrue(states[i - 1] + " -> " + states[i], states[i - 1].canMoveTo(states[i]));
+        }
+    }
+
+    @Test
+    public void everyStateIsReachableFromUndefined() {
+        final Set<ClientStubState> reached = EnumSet.of(ClientStubState.UNDEFINED);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (ClientStubState from : EnumSet.copyOf(reached)) {
+                for (ClientStubState to : ClientStubState.values()) {
+                    if (from.canMoveTo(to)) {
+                        changed |= reached.add(to);
+                    }
+                }
+            }
+        }
+        assertEquals(EnumSet.allOf(ClientStubState.class), reached);
+    }
+
+    @Test
+    public void noStateLoopsOnItself() {
+        for (ClientStubState state : ClientStubState.values()) {
+            assertFalse(state.toString(), state.canMoveTo(state));
+        }
+    }
+
+    @Test
+    public void launchAndForwardLifecycle() {
+        assertPath(ClientStubState.UNDEFINED, ClientStubState.INITIALIZING, ClientStubState.CONNECTING,
+                ClientStubState.REGISTERING, ClientStubState.LISTENING, ClientStubState.PROCESSING,
+                ClientStubState.LAUNCHING, ClientStubState.SEEKING, ClientStubState.FORWARDING,
+                ClientStubState.DISCONNECTING, ClientStubState.DIYING, ClientStubState.INITIALIZING);
+    }
+
+    @Test
+    public void failureGoesBackToListening() {
+        assertPath(ClientStubState.LISTENING, ClientStubState.LAUNCHING, ClientStubState.FAILING, ClientStubState.LISTENING);
+        assertPath(ClientStubState.SEEKING, ClientStubState.FAILING);
+        assertPath(ClientStubState.FORWARDING, ClientStubState.FAILING);
+    }
+
+    @Test
+    public void activeStatesCanDisconnect() {
+        for (ClientStubState state : EnumSet.range(ClientStubState.CONNECTING, ClientStubState.FORWARDING)) {
+            assertTrue(state.toString(), state.canMoveTo(ClientStubState.DISCONNECTING));
+        }
+        assertTrue(ClientStubState.FAILING.canMoveTo(ClientStubState.DISCONNECTING));
+    }
+
+    @Test
+    public void standbyLaunchCanBeCancelledSilently() {
+        assertPath(ClientStubState.LISTENING, ClientStubState.LAUNCHING, ClientStubState.LISTENING);
+    }
+
+    @Test
+    public void forwardingCanNotRestartLaunch() {
+        assertFalse(ClientStubState.FORWARDING.canMoveTo(ClientStubState.LAUNCHING));
+        assertFalse(ClientStubState.SEEKING.canMoveTo(ClientStubState.LAUNCHING));
+        assertFalse(ClientStubState.DIYING.canMoveTo(ClientStubState.LISTENING));
+    }
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun.stub;
+
+import java.util.PriorityQueue;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Launch scheduler ordering and admission checks.
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+public class LaunchSchedulerTest {
+
+    private static final long MEGA = 1024L * 1024L;
+
+    @Test
+    public void requestsOrderedByPriorityThenSubmission() {
+        final PriorityQueue<LaunchScheduler.LaunchRequest> queue = new PriorityQueue<LaunchScheduler.LaunchRequest>();
+        queue.add(new LaunchScheduler.LaunchRequest(null, LaunchScheduler.Priority.SPECULATIVE, 1L, 0L));
+        queue.add(new LaunchScheduler.LaunchRequest(null, LaunchScheduler.Priority.INTERACTIVE, 4L, 0L));
+        queue.add(new LaunchScheduler.LaunchRequest(null, LaunchScheduler.Priority.SAMP, 2L, 0L));
+        queue.add(new LaunchScheduler.LaunchRequest(null, LaunchScheduler.Priority.INTERACTIVE, 3L, 0L));
+        queue.add(new LaunchScheduler.LaunchRequest(null, LaunchScheduler.Priority.BACKGROUND, 0L, 0L));
+
+        assertRequest(queue.poll(), LaunchScheduler.Priority.INTERACTIVE, 3L);
+        assertRequest(queue.poll(), LaunchScheduler.Priority.INTERACTIVE, 4L);
+        assertRequest(queue.poll(), LaunchScheduler.Priority.SAMP, 2L);
+        assertRequest(queue.poll(), LaunchScheduler.Priority.BACKGROUND, 0L);
+        assertRequest(queue.poll(), LaunchScheduler.Priority.SPECULATIVE, 1L);
+        assertNull(queue.poll());
+    }
+
+    private static void assertRequest(final LaunchScheduler.LaunchRequest request, final LaunchScheduler.Priority priority, final long sequence) {
+        assertEquals(priority, request.priority);
+        assertEquals(sequence, request.sequence);
+    }
+
+    @Test
+    public void onlyMessagesAndUserActionsAreRequests() {
+        assertTrue(LaunchScheduler.Priority.INTERACTIVE.isRequest());
+        assertTrue(LaunchScheduler.Priority.SAMP.isRequest());
+        assertFalse(LaunchScheduler.Priority.BACKGROUND.isRequest());
+        assertFalse(LaunchScheduler.Priority.SPECULATIVE.isRequest());
+    }
+
+    @Test
+    public void firstLaunchAlwaysAllowed() {
+        assertTrue(LaunchScheduler.canLaunch(0, 1, 1, 0L, 512L * MEGA));
+        assertTrue(LaunchScheduler.canLaunch(0, 0, 1, 0L, 512L * MEGA));
+    }
+
+    @Test
+    public void fixedConcurrencyIgnoresResources() {
+        assertTrue(LaunchScheduler.canLaunch(2, 3, 1, 0L, 512L * MEGA));
+        assertFalse(LaunchScheduler.canLaunch(3, 3, 64, -1L, 512L * MEGA));
+    }
+
+    @Test
+    public void automaticConcurrencyUsesHalfTheCores() {
+        assertTrue(LaunchScheduler.canLaunch(3, 0, 8, -1L, 512L * MEGA));
+        assertFalse(LaunchScheduler.canLaunch(4, 0, 8, -1L, 512L * MEGA));
+        // single core: one launch at a time
+        assertFalse(LaunchScheduler.canLaunch(1, 0, 1, -1L, 512L * MEGA));
+    }
+
+    @Test
+    public void automaticConcurrencyNeedsFreeMemory() {
+        assertTrue(LaunchScheduler.canLaunch(1, 0, 8, 512L * MEGA, 512L * MEGA));
+        assertFalse(LaunchScheduler.canLaunch(1, 0, 8, 511L * MEGA, 512L * MEGA));
+    }
+}
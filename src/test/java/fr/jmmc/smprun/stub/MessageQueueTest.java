@@ -0,0 +1,260 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun.stub;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.astrogrid.samp.Message;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Message queue ring buffer, overflow policy, de-duplication, expiry and spill checks.
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+public class MessageQueueTest {
+
+    /**
+     * @param mType message type
+     * @param url url parameter
+     * @return new message
+     */
+    private static Message message(final String mType, final String url) {
+        return new Message(mType).addParam("url", url);
+    }
+
+    /**
+     * Poll all queued messages
+     * @param queue message queue
+     * @return url parameters of the polled messages (oldest first)
+     */
+    private static List<Object> drain(final MessageQueue queue) {
+        final List<Object> urls = new ArrayList<Object>();
+        Message msg;
+        while ((msg = queue.poll()) != null) {
+            urls.add(msg.getParam("url"));
+        }
+        return urls;
+    }
+
+    @Test
+    public void ringKeepsOrderAcrossWrapAround() {
+        final StubMetrics metrics = new StubMetrics();
+        final MessageQueue queue = new MessageQueue(3, MessageQueue.OverflowPolicy.DROP_OLDEST, metrics);
+
+        assertTrue(queue.offer(message("table.load.votable", "a")));
+        assertTrue(queue.offer(message("table.load.votable", "b")));
+        assertEquals("a", queue.poll().getParam("url"));
+        assertTrue(queue.offer(message("table.load.votable", "c")));
+        assertTrue(queue.offer(message("table.load.votable", "d")));
+
+        assertEquals(3, queue.size());
+        assertEquals(Arrays.<Object>asList("b", "c", "d"), drain(queue));
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        assertEquals(4L, metrics.getEnqueued());
+        assertEquals(0L, metrics.getDropped());
+    }
+
+    @Test
+    public void dropOldestDiscardsHead() {
+        final StubMetrics metrics = new StubMetrics();
+        final MessageQueue queue = new MessageQueue(2, MessageQueue.OverflowPolicy.DROP_OLDEST, metrics);
+        queue.offer(message("table.load.votable", "a"));
+        queue.offer(message("table.load.votable", "b"));
+
+        assertTrue(queue.offer(message("table.load.votable", "c")));
+        assertEquals(Arrays.<Object>asList("b", "c"), drain(queue));
+        assertEquals(1L, metrics.getDropped());
+    }
+
+    @Test
+    public void dropNewestRejectsIncoming() {
+        final StubMetrics metrics = new StubMetrics();
+        final MessageQueue queue = new MessageQueue(2, MessageQueue.OverflowPolicy.DROP_NEWEST, metrics);
+        queue.offer(message("table.load.votable", "a"));
+        queue.offer(message("table.load.votable", "b"));
+
+        assertFalse(queue.offer(message("table.load.votable", "c")));
+        assertEquals(Arrays.<Object>asList("a", "b"), drain(queue));
+        assertEquals(1L, metrics.getDropped());
+        assertEquals(2L, metrics.getEnqueued());
+    }
+
+    @Test
+    public void coalesceReplacesLatestSameMType() {
+        final MessageQueue queue = new MessageQueue(3, MessageQueue.OverflowPolicy.COALESCE_BY_MTYPE, new StubMetrics());
+        queue.offer(message("table.load.votable", "a"));
+        queue.offer(message("image.load.fits", "b"));
+        queue.offer(message("table.load.votable", "c"));
+
+        assertTrue(queue.offer(message("image.load.fits", "d")));
+        assertEquals(Arrays.<Object>asList("a", "d", "c"), drain(queue));
+    }
+
+    @Test
+    public void coalesceWithoutSameMTypeDropsOldest() {
+        final MessageQueue queue = new MessageQueue(2, MessageQueue.OverflowPolicy.COALESCE_BY_MTYPE, new StubMetrics());
+        queue.offer(message("table.load.votable", "a"));
+        queue.offer(message("table.load.votable", "b"));
+
+        assertTrue(queue.offer(message("spectrum.load.ssa-generic", "c")));
+        assertEquals(Arrays.<Object>asList("b", "c"), drain(queue));
+    }
+
+    @Test
+    public void clearReturnsQueuedMessages() {
+        final StubMetrics metrics = new StubMetrics();
+        final MessageQueue queue = new MessageQueue(2, MessageQueue.OverflowPolicy.DROP_OLDEST, metrics);
+        queue.offer(message("table.load.votable", "a"));
+        queue.offer(message("table.load.votable", "b"));
+        queue.offer(message("table.load.votable", "c"));
+
+        assertEquals(2, queue.clear().size());
+        assertTrue(queue.isEmpty());
+        // cleared messages are not expired (kept in the spool by the stub):
+        assertEquals(0L, metrics.getExpired());
+        assertTrue(queue.offer(message("table.load.votable", "d")));
+        assertEquals(Arrays.<Object>asList("d"), drain(queue));
+    }
+
+    @Test
+    public void overflowPolicyParsing() {
+        assertSame(MessageQueue.OverflowPolicy.DROP_NEWEST, MessageQueue.OverflowPolicy.parse(" drop_newest ", MessageQueue.OverflowPolicy.DROP_OLDEST));
+        assertSame(MessageQueue.OverflowPolicy.DROP_OLDEST, MessageQueue.OverflowPolicy.parse("bogus", MessageQueue.OverflowPolicy.DROP_OLDEST));
+        assertSame(MessageQueue.OverflowPolicy.COALESCE_BY_MTYPE, MessageQueue.OverflowPolicy.parse(null, MessageQueue.OverflowPolicy.COALESCE_BY_MTYPE));
+    }
+
+    @Test
+    public void duplicateWithinWindowIsDiscarded() {
+        final StubMetrics metrics = new StubMetrics();
+        final MessageQueue queue = new MessageQueue(4, MessageQueue.OverflowPolicy.DROP_OLDEST, 60000L,
+                Collections.<String, Long>emptyMap(), 0L, 0L, metrics);
+
+        assertTrue(queue.offer(message("table.load.votable", "file:/a.vot")));
+        assertFalse(queue.offer(message("table.load.votable", " file:/a.vot ")));
+        assertTrue(queue.offer(message("image.load.fits", "file:/a.vot")));
+        assertTrue(queue.offer(message("table.load.votable", "file:/b.vot")));
+
+        assertEquals(3, queue.size());
+        assertEquals(1L, metrics.getDuplicated());
+    }
+
+    @Test
+    public void duplicateAfterWindowIsQueued() {
+        final MessageQueue queue = new MessageQueue(4, MessageQueue.OverflowPolicy.DROP_OLDEST, 1000L,
+                Collections.<String, Long>emptyMap(), 0L, 0L, new StubMetrics());
+
+        assertTrue(queue.offer(message("table.load.votable", "a"), System.currentTimeMillis() - 5000L));
+        assertTrue(queue.offer(message("table.load.votable", "a")));
+        assertEquals(2, queue.size());
+    }
+
+    @Test
+    public void normalizedKeyIgnoresParameterOrder() {
+        final Message first = new Message("table.load.votable").addParam("url", "a").addParam("name", "n");
+        final Message second = new Message("table.load.votable").addParam("name", " n").addParam("url", "a ");
+        assertEquals(MessageQueue.normalize(first), MessageQueue.normalize(second));
+        assertFalse(MessageQueue.normalize(first).equals(MessageQueue.normalize(message("table.load.votable", "a"))));
+    }
+
+    @Test
+    public void expiredMessagesAreNotReturned() {
+        final StubMetrics metrics = new StubMetrics();
+        final Map<String, Long> ttlByMType = new HashMap<String, Long>();
+        ttlByMType.put("coord.pointAt.sky", Long.valueOf(10000L));
+        final MessageQueue queue = new MessageQueue(4, MessageQueue.OverflowPolicy.DROP_OLDEST, 0L, ttlByMType, 0L, 0L, metrics);
+
+        final long past = System.currentTimeMillis() - 60000L;
+        queue.offer(message("coord.pointAt.sky", "old"), past);
+        queue.offer(message("table.load.votable", "kept"), past);
+        queue.offer(message("coord.pointAt.sky", "recent"));
+
+        assertEquals(Arrays.<Object>asList("kept", "recent"), drain(queue));
+        assertEquals(1L, metrics.getExpired());
+    }
+
+    @Test
+    public void defaultTimeToLiveAppliesToOtherMTypes() {
+        final Map<String, Long> ttlByMType = new HashMap<String, Long>();
+        ttlByMType.put("table.load.votable", Long.valueOf(0L));
+        final MessageQueue queue = new MessageQueue(4, MessageQueue.OverflowPolicy.DROP_OLDEST, 0L, ttlByMType, 30000L, 0L, new StubMetrics());
+
+        final long past = System.currentTimeMillis() - 60000L;
+        queue.offer(message("table.load.votable", "never expires"), past);
+        queue.offer(message("image.load.fits", "expired"), past);
+
+        assertEquals(Arrays.<Object>asList("never expires"), drain(queue));
+    }
+
+    /**
+     * @return files in the private spill directory
+     * @throws IOException if the directory is not available
+     */
+    private static File[] spillFiles() throws IOException {
+        return PrivateFiles.getDirectory("spill").listFiles();
+    }
+
+    @Test
+    public void largeParametersAreSpilledAndRestored() throws IOException {
+        final MessageQueue queue = new MessageQueue(4, MessageQueue.OverflowPolicy.DROP_OLDEST, 0L,
+                Collections.<String, Long>emptyMap(), 0L, 64L, new StubMetrics());
+        final int before = spillFiles().length;
+
+        final char[] votable = new char[4096];
+        Arrays.fill(votable, 'x');
+        final Message large = new Message("table.load.votable").addParam("url", "a").addParam("table", new String(votable));
+        assertTrue(queue.offer(large));
+        assertTrue(queue.offer(message("table.load.votable", "b")));
+        assertEquals(before + 1, spillFiles().length);
+
+        final Set<String> mTypes = queue.mTypes();
+        assertEquals(Collections.singleton("table.load.votable"), mTypes);
+
+        final Message restored = queue.poll();
+        assertEquals(large.getParams(), restored.getParams());
+        assertEquals(before, spillFiles().length);
+        assertEquals("b", queue.poll().getParam("url"));
+    }
+
+    @Test
+    public void clearReleasesSpilledParameters() throws IOException {
+        final MessageQueue queue = new MessageQueue(4, MessageQueue.OverflowPolicy.DROP_OLDEST, 0L,
+                Collections.<String, Long>emptyMap(), 0L, 16L, new StubMetrics());
+        final int before = spillFiles().length;
+
+        queue.offer(message("image.load.fits", "http://example.org/a-rather-long-url/HD1234.fits"));
+        assertEquals(before + 1, spillFiles().length);
+
+        final List<Message> cleared = queue.clear();
+        assertEquals(1, cleared.size());
+        assertEquals("image.load.fits", cleared.get(0).getMType());
+        assertNull(cleared.get(0).getParam("url"));
+        assertEquals(before, spillFiles().length);
+    }
+}
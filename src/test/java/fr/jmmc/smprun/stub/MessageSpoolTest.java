@@ -0,0 +1,162 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun.stub;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import org.astrogrid.samp.Message;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Message spool encoding, crash recovery and compaction checks.
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+public class MessageSpoolTest {
+
+    /** spool directory */
+    private File _dir;
+    /** spool file */
+    private File _file;
+
+    @Before
+    public void setUp() throws IOException {
+        _dir = Files.createTempDirectory("spool").toFile();
+        _file = new File(_dir, "Aspro2.spool");
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : _dir.listFiles()) {
+            file.delete();
+        }
+        _dir.delete();
+    }
+
+    @Test
+    public void recordEncodingRoundTrip() throws IOException {
+        final Message message = new Message("table.load.votable").addParam("url", "file:/data/targets.vot").addParam("table-id", "t1");
+
+        final MessageSpool.Record record = MessageSpool.readRecord(ByteBuffer.wrap(MessageSpool.encode(message, 1234567890123L)));
+        assertEquals(1234567890123L, record.getReceiveTime());
+        assertEquals("table.load.votable", record.getMessage().getMType());
+        assertEquals(message.getParams(), record.getMessage().getParams());
+    }
+
+    @Test
+    public void appendedMessagesAreLoadedInOrder() {
+        final MessageSpool spool = new MessageSpool(_file);
+        spool.append(new Message("table.load.votable").addParam("url", "a"), 1000L);
+        spool.append(new Message("image.load.fits").addParam("url", "b"), 2000L);
+
+        final List<MessageSpool.Record> records = new MessageSpool(_file).load();
+        assertEquals(2, records.size());
+        assertEquals("a", records.get(0).getMessage().getParam("url"));
+        assertEquals(1000L, records.get(0).getReceiveTime());
+        assertEquals("image.load.fits", records.get(1).getMessage().getMType());
+        assertEquals(2000L, records.get(1).getReceiveTime());
+    }
+
+    @Test
+    public void truncatedLastRecordIsDropped() throws IOException {
+        final MessageSpool spool = new MessageSpool(_file);
+        spool.append(new Message("table.load.votable").addParam("url", "a"), 1000L);
+        spool.append(new Message("table.load.votable").addParam("url", "b"), 2000L);
+
+        final RandomAccessFile raf = new RandomAccessFile(_file, "rw");
+        try {
+            raf.setLength(raf.length() - 3L);
+        } finally {
+            raf.close();
+        }
+
+        assertEquals(1, spool.load().size());
+        // spool rewritten: later appends remain readable
+        spool.append(new Message("table.load.votable").addParam("url", "c"), 3000L);
+        final List<MessageSpool.Record> records = spool.load();
+        assertEquals(2, records.size());
+        assertEquals("c", records.get(1).getMessage().getParam("url"));
+    }
+
+    @Test
+    public void compactKeepsRemainingOrDeletes() {
+        final MessageSpool spool = new MessageSpool(_file);
+        spool.append(new Message("table.load.votable").addParam("url", "a"), 1000L);
+        spool.append(new Message("table.load.votable").addParam("url", "b"), 2000L);
+
+        final List<MessageSpool.Record> records = spool.load();
+        spool.compact(records.subList(1, 2));
+        assertEquals("b", spool.load().get(0).getMessage().getParam("url"));
+        assertEquals(1, _dir.listFiles().length);
+
+        spool.compact(Collections.<MessageSpool.Record>emptyList());
+        assertFalse(_file.exists());
+        assertTrue(spool.load().isEmpty());
+    }
+
+    @Test
+    public void expiredRecordsAreDroppedOnRestore() {
+        final long now = System.currentTimeMillis();
+        final MessageSpool spool = new MessageSpool(_file);
+        spool.append(new Message("table.load.votable").addParam("url", "old"), now - 120000L);
+        spool.append(new Message("table.load.votable").addParam("url", "new"), now - 1000L);
+
+        final StubMetrics metrics = new StubMetrics();
+        final MessageQueue queue = new MessageQueue(4, MessageQueue.OverflowPolicy.DROP_OLDEST, 0L,
+                Collections.<String, Long>emptyMap(), 60000L, 0L, metrics);
+        for (MessageSpool.Record record : spool.load()) {
+            queue.offer(record.getMessage(), record.getReceiveTime());
+        }
+
+        final List<MessageSpool.Record> remaining = queue.records();
+        assertEquals(1, remaining.size());
+        assertEquals("new", remaining.get(0).getMessage().getParam("url"));
+        assertEquals(now - 1000L, remaining.get(0).getReceiveTime());
+        assertEquals(1L, metrics.getExpired());
+    }
+
+    @Test
+    public void symbolicLinkIsRefused() throws IOException {
+        final File target = new File(_dir, "target");
+        Files.createSymbolicLink(_file.toPath(), target.toPath());
+
+        final MessageSpool spool = new MessageSpool(_file);
+        spool.append(new Message("table.load.votable"), 1000L);
+
+        assertFalse(target.exists());
+        assertTrue(spool.load().isEmpty());
+    }
+
+    @Test
+    public void disabledSpoolIsEmpty() {
+        final MessageSpool spool = new MessageSpool((File) null);
+        spool.append(new Message("table.load.votable"), 1000L);
+        spool.compact(Collections.<MessageSpool.Record>emptyList());
+        assertTrue(spool.load().isEmpty());
+    }
+}
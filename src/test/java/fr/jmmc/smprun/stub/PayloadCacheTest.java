@@ -0,0 +1,66 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun.stub;
+
+import org.astrogrid.samp.Message;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Payload cache URL selection and file naming checks.
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+public class PayloadCacheTest {
+
+    @Test
+    public void onlyRemotePayloadsOfLoadMessagesAreCached() {
+        final String url = "http://archive.eso.org/data/HD1234.fits";
+        assertEquals(url, PayloadCache.getRemoteUrl(new Message("image.load.fits").addParam("url", " " + url + " ")));
+        assertEquals(url, PayloadCache.getRemoteUrl(new Message("table.load.votable").addParam("url", url)));
+
+        assertNull(PayloadCache.getRemoteUrl(new Message("coord.pointAt.sky").addParam("url", url)));
+        assertNull(PayloadCache.getRemoteUrl(new Message("table.highlight.row").addParam("url", url)));
+        assertNull(PayloadCache.getRemoteUrl(new Message("table.load.votable").addParam("url", "file:/tmp/HD1234.vot")));
+        assertNull(PayloadCache.getRemoteUrl(new Message("table.load.votable")));
+    }
+
+    @Test
+    public void fileNameKeepsOriginalNameAndExtension() {
+        final String name = PayloadCache.getFileName("https://example.org/obs/HD1234.fits.gz?format=raw");
+        assertTrue(name, name.endsWith("_HD1234.fits.gz"));
+        assertEquals(12 + "_HD1234.fits.gz".length(), name.length());
+    }
+
+    @Test
+    public void fileNamesAreUniquePerUrl() {
+        final String first = PayloadCache.getFileName("http://a.org/targets.vot");
+        final String second = PayloadCache.getFileName("http://b.org/targets.vot");
+        assertFalse(first.equals(second));
+        assertEquals(first, PayloadCache.getFileName("http://a.org/targets.vot"));
+    }
+
+    @Test
+    public void fileNameWithoutPathIsDigest() {
+        final String name = PayloadCache.getFileName("http://example.org/");
+        assertEquals(12, name.length());
+        assertEquals(-1, name.indexOf('_'));
+    }
+}
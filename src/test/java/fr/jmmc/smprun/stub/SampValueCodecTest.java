@@ -0,0 +1,106 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun.stub;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * SAMP value codec round-trip checks.
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+public class SampValueCodecTest {
+
+    /**
+     * @param value SAMP value
+     * @return encoded bytes
+     * @throws IOException if an I/O error occurred
+     */
+    private static byte[] encode(final Object value) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        SampValueCodec.writeValue(out, value);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void nestedValuesRoundTrip() throws IOException {
+        final Map<String, Object> meta = new LinkedHashMap<String, Object>();
+        meta.put("ra", "12.5");
+        meta.put("dec", "-45.25");
+        final Map<String, Object> params = new LinkedHashMap<String, Object>();
+        params.put("url", "http://example.org/HD1234.vot");
+        params.put("row-list", Arrays.asList("1", "2", "3"));
+        params.put("meta", meta);
+        params.put("empty", Collections.emptyList());
+
+        final ByteBuffer buffer = ByteBuffer.wrap(encode(params));
+        assertEquals(params, SampValueCodec.readValue(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void unicodeStringRoundTrip() throws IOException {
+        final String value = "\u00e9toile \u03b1 Cen \u2605";
+        assertEquals(value, SampValueCodec.readValue(ByteBuffer.wrap(encode(value))));
+    }
+
+    @Test
+    public void nullIsEncodedAsEmptyMap() throws IOException {
+        assertEquals(Collections.emptyMap(), SampValueCodec.readValue(ByteBuffer.wrap(encode(null))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedValueIsRejected() throws IOException {
+        encode(Integer.valueOf(42));
+    }
+
+    @Test(expected = BufferUnderflowException.class)
+    public void truncatedValueIsDetected() throws IOException {
+        final byte[] bytes = encode(Arrays.asList("first", "second"));
+        SampValueCodec.readValue(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 2)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidTagIsDetected() {
+        SampValueCodec.readValue(ByteBuffer.wrap(new byte[]{'X', 0, 0, 0, 0}));
+    }
+
+    @Test
+    public void estimatedSizeCoversEncodedSize() throws IOException {
+        final Map<String, Object> params = new LinkedHashMap<String, Object>();
+        params.put("url", "http://example.org/HD1234.fits");
+        params.put("name", "HD 1234");
+        params.put("list", Arrays.asList("a", "bc"));
+        assertTrue(SampValueCodec.estimateSize(params) >= encode(params).length);
+        assertEquals(encode("HD 1234").length, SampValueCodec.estimateSize("HD 1234"));
+    }
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun.stub;
+
+import fr.jmmc.smprsc.data.stub.model.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.astrogrid.samp.Metadata;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Speculative launch resolution checks (hit, wrong prediction and timeout).
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+public class SpeculativeLauncherTest {
+
+    private final SpeculativeLauncher _launcher = new SpeculativeLauncher();
+
+    @After
+    public void tearDown() {
+        _launcher.stop();
+    }
+
+    private static ClientStub createStub(final String name) {
+        final Map<String, String> metadata = new HashMap<String, String>(4);
+        metadata.put(Metadata.NAME_KEY, name);
+        return new ClientStub(new StubDescriptor(metadata, new ArrayList<String>(0), 0L, Type.JNLP), false);
+    }
+
+    private static void waitFor(final Condition condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+        while (!condition.isTrue() && System.nanoTime() < deadline) {
+            Thread.sleep(10L);
+        }
+    }
+
+    private interface Condition {
+
+        boolean isTrue();
+    }
+
+    @Test
+    public void requestOfPredictedApplicationIsHit() {
+        final ClientStub predicted = createStub("SearchCal");
+        _launcher.speculate(predicted, "Aspro2", 1L, TimeUnit.MINUTES);
+        assertTrue(predicted.isStandby());
+        assertEquals(1, _launcher.getPendingCount());
+
+        _launcher.requested(predicted);
+
+        assertEquals(1, _launcher.getHits());
+        assertEquals(0, _launcher.getMisses());
+        assertEquals(0, _launcher.getPendingCount());
+        // left to the launch request itself to claim:
+        assertTrue(predicted.isStandby());
+    }
+
+    @Test
+    public void requestOfAnotherApplicationIsMiss() {
+        final ClientStub predicted = createStub("SearchCal");
+        _launcher.speculate(predicted, "Aspro2", 1L, TimeUnit.MINUTES);
+
+        _launcher.requested(createStub("LITpro"));
+
+        assertEquals(0, _launcher.getHits());
+        assertEquals(1, _launcher.getMisses());
+        assertEquals(0, _launcher.getPendingCount());
+        // cancellation won the standby instance:
+        assertFalse(predicted.isStandby());
+    }
+
+    @Test
+    public void requestOfSourceApplicationKeepsSpeculation() {
+        final ClientStub predicted = createStub("SearchCal");
+        _launcher.speculate(predicted, "Aspro2", 1L, TimeUnit.MINUTES);
+
+        _launcher.requested(createStub("Aspro2"));
+
+        assertEquals(0, _launcher.getHits());
+        assertEquals(0, _launcher.getMisses());
+        assertEquals(1, _launcher.getPendingCount());
+        assertTrue(predicted.isStandby());
+    }
+
+    @Test
+    public void speculationExpiresAfterTimeout() throws InterruptedException {
+        final ClientStub predicted = createStub("SearchCal");
+        _launcher.speculate(predicted, "Aspro2", 50L, TimeUnit.MILLISECONDS);
+
+        waitFor(new Condition() {
+            @Override
+            public boolean isTrue() {
+                return !predicted.isStandby();
+            }
+        });
+
+        assertFalse(predicted.isStandby());
+        assertEquals(0, _launcher.getHits());
+        assertEquals(1, _launcher.getMisses());
+        assertEquals(0, _launcher.getPendingCount());
+
+        // too late: no hit
+        _launcher.requested(predicted);
+        assertEquals(0, _launcher.getHits());
+    }
+}
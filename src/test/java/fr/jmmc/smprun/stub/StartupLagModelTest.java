@@ -0,0 +1,52 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun.stub;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Startup lag moving average checks.
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+public class StartupLagModelTest {
+
+    @Test
+    public void firstObservationIsTheEstimate() {
+        assertEquals(4200L, StartupLagModel.average(-1L, 4200L));
+    }
+
+    @Test
+    public void lastObservationWeightsThirtyPercent() {
+        assertEquals(13000L, StartupLagModel.average(10000L, 20000L));
+        assertEquals(7000L, StartupLagModel.average(10000L, 0L));
+    }
+
+    @Test
+    public void estimateConvergesToStableLag() {
+        long estimate = -1L;
+        estimate = StartupLagModel.average(estimate, 60000L);
+        for (int i = 0; i < 30; i++) {
+            estimate = StartupLagModel.average(estimate, 5000L);
+        }
+        assertTrue("estimate = " + estimate, Math.abs(estimate - 5000L) <= 1L);
+    }
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun.stub;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Usage model transition ranking and persistence checks.
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+public class UsageModelTest {
+
+    /**
+     * Record the given requests in order
+     * @param model usage model
+     * @param names requested application names
+     */
+    private static void request(final UsageModel model, final String... names) {
+        for (String name : names) {
+            model.recordRequest(name);
+        }
+    }
+
+    @Test
+    public void mostFrequentFollowerIsPredicted() {
+        final UsageModel model = new UsageModel(null);
+        request(model, "SearchCal", "Aspro2", "SearchCal", "Aspro2", "SearchCal", "Aspro2", "SearchCal", "LITpro");
+
+        assertEquals(4, model.getTransitionCount("SearchCal"));
+        assertEquals("Aspro2", model.predictNext("SearchCal"));
+        assertEquals(0.75, model.getConfidence("SearchCal", "Aspro2"), 1e-9);
+        assertEquals(0.25, model.getConfidence("SearchCal", "LITpro"), 1e-9);
+        assertEquals("SearchCal", model.predictNext("Aspro2"));
+    }
+
+    @Test
+    public void unknownApplicationHasNoPrediction() {
+        final UsageModel model = new UsageModel(null);
+        request(model, "Aspro2");
+
+        assertNull(model.predictNext("Aspro2"));
+        assertNull(model.predictNext("TOPCAT"));
+        assertEquals(0, model.getTransitionCount("TOPCAT"));
+        assertEquals(0.0, model.getConfidence("Aspro2", "TOPCAT"), 0.0);
+    }
+
+    @Test
+    public void repeatedRequestIsNotATransition() {
+        final UsageModel model = new UsageModel(null);
+        request(model, "Aspro2", "Aspro2", "Aspro2");
+
+        assertEquals(0, model.getTransitionCount("Aspro2"));
+    }
+
+    @Test
+    public void savedModelIsReloaded() throws IOException {
+        final File dir = Files.createTempDirectory("usage").toFile();
+        final File file = new File(dir, "usage.properties");
+        try {
+            final UsageModel model = new UsageModel(file);
+            request(model, "SearchCal", "Aspro2", "SearchCal", "LITpro", "SearchCal", "Aspro2");
+            model.save();
+
+            final UsageModel loaded = new UsageModel(file);
+            assertEquals(3, loaded.getTransitionCount("SearchCal"));
+            assertEquals("Aspro2", loaded.predictNext("SearchCal"));
+            assertEquals(model.getConfidence("SearchCal", "Aspro2"), loaded.getConfidence("SearchCal", "Aspro2"), 1e-9);
+        } finally {
+            file.delete();
+            dir.delete();
+        }
+    }
+}
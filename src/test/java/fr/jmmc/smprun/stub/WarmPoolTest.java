@@ -0,0 +1,59 @@
+/*******************************************************************************
+ *          AppLauncher project ( http://www.jmmc.fr/applauncher )
+ *******************************************************************************
+ * Copyright (c) 2014, CNRS. All rights reserved.
+ *
+ * This file is part of AppLauncher.
+ *
+ * AppLauncher is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the
+ * Free Software Foundation, version 3.
+ *
+ * AppLauncher is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * AppLauncher. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.jmmc.smprun.stub;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Warm standby pool cap and claim checks.
+ *
+ * @author Sylvain LAFRASSE, Laurent BOURGES
+ */
+public class WarmPoolTest {
+
+    @Test
+    public void memoryCapLimitsInstances() {
+        assertEquals(4L, WarmPool.getMaxInstances(2048, 512));
+        assertEquals(1L, WarmPool.getMaxInstances(1000, 512));
+        assertEquals(0L, WarmPool.getMaxInstances(500, 512));
+    }
+
+    @Test
+    public void invalidSettingsDoNotFail() {
+        assertEquals(0L, WarmPool.getMaxInstances(-1, 512));
+        assertEquals(100L, WarmPool.getMaxInstances(100, 0));
+    }
+
+    @Test
+    public void claimedOnlyByLaterRequest() {
+        final long warmTime = 1000L;
+        assertFalse(WarmPool.isClaimed(0L, warmTime));
+        assertFalse(WarmPool.isClaimed(900L, warmTime));
+        assertFalse(WarmPool.isClaimed(warmTime, warmTime));
+        assertTrue(WarmPool.isClaimed(1100L, warmTime));
+    }
+
+    @Test
+    public void claimSurvivesNanoTimeOverflow() {
+        assertTrue(WarmPool.isClaimed(Long.MIN_VALUE + 10L, Long.MAX_VALUE - 10L));
+        assertFalse(WarmPool.isClaimed(0L, -5L));
+    }
+}